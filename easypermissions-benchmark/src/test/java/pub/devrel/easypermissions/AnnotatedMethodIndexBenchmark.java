@@ -0,0 +1,73 @@
+package pub.devrel.easypermissions;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup of {@link AfterPermissionGranted} methods: the {@link AnnotatedMethodIndex}, against the
+ * walk up to {@code Object} that every result used to cost, and {@code runAnnotatedMethods} as
+ * reached from {@code onRequestPermissionsResult}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class AnnotatedMethodIndexBenchmark {
+
+    private Hosts.Level0 mShallow;
+    private Hosts.Level7 mDeep;
+
+    @Setup
+    public void setUp() {
+        mShallow = Hosts.newActivity(Hosts.Level0.class);
+        mDeep = Hosts.newActivity(Hosts.Level7.class);
+    }
+
+    @Benchmark
+    public Method[] index_shallow() {
+        return AnnotatedMethodIndex.getMethods(Hosts.Level0.class, Hosts.CODE);
+    }
+
+    @Benchmark
+    public Method[] index_deep() {
+        return AnnotatedMethodIndex.getMethods(Hosts.Level7.class, Hosts.CODE);
+    }
+
+    @Benchmark
+    public List<Method> uncachedScan_deep() {
+        List<Method> methods = new ArrayList<>();
+        for (Class<?> c = Hosts.Level7.class; c != null; c = c.getSuperclass()) {
+            for (Method method : c.getDeclaredMethods()) {
+                AfterPermissionGranted ann = method.getAnnotation(AfterPermissionGranted.class);
+                if (ann != null && ann.value() == Hosts.CODE) {
+                    method.setAccessible(true);
+                    methods.add(method);
+                }
+            }
+        }
+        return methods;
+    }
+
+    @Benchmark
+    public int runAnnotatedMethods_shallow() {
+        EasyPermissions.onRequestPermissionsResult(Hosts.CODE, Hosts.PERMS, Hosts.ALL_GRANTED,
+                mShallow);
+        return Hosts.sInvocations;
+    }
+
+    @Benchmark
+    public int runAnnotatedMethods_deep() {
+        EasyPermissions.onRequestPermissionsResult(Hosts.CODE, Hosts.PERMS, Hosts.ALL_GRANTED,
+                mDeep);
+        return Hosts.sInvocations;
+    }
+}
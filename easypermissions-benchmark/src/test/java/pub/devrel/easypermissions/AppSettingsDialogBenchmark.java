@@ -0,0 +1,71 @@
+package pub.devrel.easypermissions;
+
+import android.app.Activity;
+import android.os.Parcel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parceling of {@link AppSettingsDialog}, done every time it is shown and when its holder Activity
+ * is recreated.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class AppSettingsDialogBenchmark {
+
+    private AppSettingsDialog mDefaultTexts;
+    private AppSettingsDialog mFormattedTexts;
+    private AppSettingsDialog mLiteralTexts;
+
+    @Setup
+    public void setUp() {
+        Activity activity = Hosts.newActivity(Activity.class);
+        mDefaultTexts = new AppSettingsDialog.Builder(activity).build();
+        mFormattedTexts = new AppSettingsDialog.Builder(activity)
+                .setTitle(android.R.string.dialog_alert_title)
+                .setRationale(android.R.string.unknownName, "Camera", 2)
+                .build();
+        mLiteralTexts = new AppSettingsDialog.Builder(activity)
+                .setTitle("Permissions required")
+                .setRationale("This app needs the camera to scan documents. Open the app settings"
+                        + " to allow it.")
+                .setPositiveButton("Settings")
+                .setNegativeButton("Not now")
+                .build();
+    }
+
+    @Benchmark
+    public AppSettingsDialog parcel_defaultTexts() {
+        return roundTrip(mDefaultTexts);
+    }
+
+    @Benchmark
+    public AppSettingsDialog parcel_formattedTexts() {
+        return roundTrip(mFormattedTexts);
+    }
+
+    @Benchmark
+    public AppSettingsDialog parcel_literalTexts() {
+        return roundTrip(mLiteralTexts);
+    }
+
+    private static AppSettingsDialog roundTrip(AppSettingsDialog dialog) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            dialog.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            return AppSettingsDialog.CREATOR.createFromParcel(parcel);
+        } finally {
+            parcel.recycle();
+        }
+    }
+}
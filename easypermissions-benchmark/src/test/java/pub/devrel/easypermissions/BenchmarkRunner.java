@@ -0,0 +1,50 @@
+package pub.devrel.easypermissions;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+
+/**
+ * Runs the JMH benchmarks of this module, with the GC profiler so that bytes allocated per
+ * operation ({@code gc.alloc.rate.norm}) are reported along with throughput.
+ * <p>
+ * Android classes only work inside the class loader of a Robolectric sandbox, so JMH can't fork a
+ * fresh JVM per benchmark as it normally would: all benchmarks share this JVM and its JIT profile,
+ * which makes results somewhat sensitive to the order they run in. Android APIs are backed by
+ * Robolectric shadows, so system calls are far cheaper than the binder transactions they stand
+ * for on a device: numbers compare code paths of the library and catch regressions, they don't
+ * predict on-device latency.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class BenchmarkRunner {
+
+    @Test
+    public void run() throws Exception {
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .include(System.getProperty("jmh.includes", ".*Benchmark"))
+                .forks(0)
+                .warmupIterations(5)
+                .warmupTime(TimeValue.seconds(1))
+                .measurementIterations(5)
+                .measurementTime(TimeValue.seconds(1))
+                .addProfiler(GCProfiler.class);
+
+        String results = System.getProperty("jmh.results");
+        if (results != null) {
+            new File(results).getParentFile().mkdirs();
+            options.resultFormat(ResultFormatType.JSON).result(results);
+        }
+
+        MainThread.runWhile(new Runner(options.build()));
+    }
+}
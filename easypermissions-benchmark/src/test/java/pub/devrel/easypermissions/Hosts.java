@@ -0,0 +1,134 @@
+package pub.devrel.easypermissions;
+
+import android.Manifest;
+import android.app.Activity;
+import android.content.pm.PackageManager;
+import android.support.annotation.NonNull;
+import android.support.v7.app.AppCompatActivity;
+
+import org.robolectric.Robolectric;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Hosts and results shared by the benchmarks.
+ */
+final class Hosts {
+
+    static final int CODE = 42;
+
+    static final String[] PERMS = {
+            Manifest.permission.CAMERA,
+            Manifest.permission.RECORD_AUDIO,
+            Manifest.permission.READ_CONTACTS,
+    };
+    static final int[] ALL_GRANTED = {
+            PackageManager.PERMISSION_GRANTED,
+            PackageManager.PERMISSION_GRANTED,
+            PackageManager.PERMISSION_GRANTED,
+    };
+    static final int[] ONE_DENIED = {
+            PackageManager.PERMISSION_GRANTED,
+            PackageManager.PERMISSION_DENIED,
+            PackageManager.PERMISSION_GRANTED,
+    };
+
+    static int sInvocations;
+
+    private Hosts() {
+    }
+
+    /**
+     * @return a new, not created, instance of {@code type}. Creating an {@link AppCompatActivity}
+     * would need an AppCompat theme, and none of the benchmarks needs a created Activity.
+     */
+    static <T extends Activity> T newActivity(final Class<T> type) {
+        return MainThread.call(new Callable<T>() {
+            @Override
+            public T call() {
+                return Robolectric.buildActivity(type).get();
+            }
+        });
+    }
+
+    /**
+     * Counts the permissions handed to it, as a typical receiver would look at them.
+     */
+    static class CountingCallbacks implements EasyPermissions.PermissionCallbacks {
+
+        int mCount;
+
+        @Override
+        public void onPermissionsGranted(int requestCode, @NonNull List<String> perms) {
+            mCount += perms.size();
+        }
+
+        @Override
+        public void onPermissionsDenied(int requestCode, @NonNull List<String> perms) {
+            mCount += perms.size();
+        }
+
+        @Override
+        public void onRequestPermissionsResult(int requestCode,
+                                               @NonNull String[] permissions,
+                                               @NonNull int[] grantResults) {
+        }
+    }
+
+    /**
+     * Annotated method declared on top of the hundreds of methods of {@link AppCompatActivity}
+     * and its superclasses.
+     */
+    public static class Level0 extends AppCompatActivity {
+
+        @AfterPermissionGranted(CODE)
+        void onGranted0() {
+            sInvocations++;
+        }
+    }
+
+    public static class Level1 extends Level0 {
+        void helper1() {
+        }
+    }
+
+    public static class Level2 extends Level1 {
+        void helper2() {
+        }
+    }
+
+    public static class Level3 extends Level2 {
+
+        @AfterPermissionGranted(CODE)
+        void onGranted3() {
+            sInvocations++;
+        }
+    }
+
+    public static class Level4 extends Level3 {
+        void helper4() {
+        }
+    }
+
+    public static class Level5 extends Level4 {
+        void helper5() {
+        }
+    }
+
+    public static class Level6 extends Level5 {
+        void helper6() {
+        }
+    }
+
+    /**
+     * Seven levels below {@link AppCompatActivity}, with annotated methods on three of them.
+     */
+    public static class Level7 extends Level6 {
+
+        @AfterPermissionGranted(CODE)
+        void onGranted7() {
+            sInvocations++;
+        }
+    }
+}
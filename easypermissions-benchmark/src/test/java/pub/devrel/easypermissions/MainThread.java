@@ -0,0 +1,76 @@
+package pub.devrel.easypermissions;
+
+import android.os.Looper;
+
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.util.Collection;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lets benchmarks create Activities and other objects that must be created on the Robolectric
+ * main thread, while JMH runs them on its own worker threads.
+ */
+final class MainThread {
+
+    private static final BlockingQueue<FutureTask<?>> TASKS = new LinkedBlockingQueue<>();
+
+    private MainThread() {
+    }
+
+    /**
+     * Run {@code task} on the main thread and wait for its result.
+     */
+    static <T> T call(Callable<T> task) {
+        FutureTask<T> future = new FutureTask<>(task);
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            future.run();
+        } else {
+            TASKS.add(future);
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Run {@code runner} in the background, running tasks passed to {@link #call(Callable)} on
+     * the calling main thread until it's done.
+     */
+    static Collection<RunResult> runWhile(final Runner runner) throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Collection<RunResult>> results = executor.submit(
+                    new Callable<Collection<RunResult>>() {
+                        @Override
+                        public Collection<RunResult> call() throws RunnerException {
+                            return runner.run();
+                        }
+                    });
+            while (!results.isDone()) {
+                FutureTask<?> task = TASKS.poll(10, TimeUnit.MILLISECONDS);
+                if (task != null) {
+                    task.run();
+                }
+            }
+            return results.get();
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package pub.devrel.easypermissions;
+
+import android.app.Application;
+import android.content.pm.PackageInfo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Permission checks for 1 to 20 permissions: {@code hasPermissions}, with one system check per
+ * permission, against {@link PermissionSnapshot}.
+ * <p>
+ * {@code capture} reads the grant state of every manifest permission, from the package flags in
+ * one call, or with one check per manifest permission when the flags are missing as on some
+ * devices. {@code snapshot} checks against an already captured snapshot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PermissionCheckBenchmark {
+
+    private static final String[] MANIFEST_PERMS = {
+            "android.permission.READ_CALENDAR",
+            "android.permission.WRITE_CALENDAR",
+            "android.permission.CAMERA",
+            "android.permission.READ_CONTACTS",
+            "android.permission.WRITE_CONTACTS",
+            "android.permission.GET_ACCOUNTS",
+            "android.permission.ACCESS_FINE_LOCATION",
+            "android.permission.ACCESS_COARSE_LOCATION",
+            "android.permission.RECORD_AUDIO",
+            "android.permission.READ_PHONE_STATE",
+            "android.permission.CALL_PHONE",
+            "android.permission.READ_CALL_LOG",
+            "android.permission.WRITE_CALL_LOG",
+            "android.permission.USE_SIP",
+            "android.permission.BODY_SENSORS",
+            "android.permission.SEND_SMS",
+            "android.permission.RECEIVE_SMS",
+            "android.permission.READ_SMS",
+            "android.permission.READ_EXTERNAL_STORAGE",
+            "android.permission.WRITE_EXTERNAL_STORAGE",
+    };
+
+    @Param({"1", "5", "20"})
+    public int perms;
+
+    /**
+     * Whether the package reports grant flags.
+     */
+    @Param({"true", "false"})
+    public boolean flags;
+
+    private Application mContext;
+    private String[] mPerms;
+    private PermissionSnapshot mSnapshot;
+
+    @Setup
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        shadowOf(mContext).grantPermissions(MANIFEST_PERMS);
+
+        PackageInfo info = new PackageInfo();
+        info.packageName = mContext.getPackageName();
+        info.requestedPermissions = MANIFEST_PERMS.clone();
+        if (flags) {
+            info.requestedPermissionsFlags = new int[MANIFEST_PERMS.length];
+            Arrays.fill(info.requestedPermissionsFlags, PackageInfo.REQUESTED_PERMISSION_GRANTED);
+        }
+        shadowOf(mContext.getPackageManager()).addPackage(info);
+
+        mPerms = Arrays.copyOf(MANIFEST_PERMS, perms);
+        mSnapshot = PermissionSnapshot.capture(mContext);
+    }
+
+    @Benchmark
+    public boolean hasPermissions() {
+        return EasyPermissions.hasPermissions(mContext, mPerms);
+    }
+
+    @Benchmark
+    public boolean capture() {
+        return PermissionSnapshot.capture(mContext).hasPermissions(mPerms);
+    }
+
+    @Benchmark
+    public boolean snapshot() {
+        return mSnapshot.hasPermissions(mPerms);
+    }
+}
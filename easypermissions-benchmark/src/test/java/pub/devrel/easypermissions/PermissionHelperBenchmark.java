@@ -0,0 +1,65 @@
+package pub.devrel.easypermissions;
+
+import android.app.Activity;
+import android.support.v4.app.Fragment;
+import android.support.v7.app.AppCompatActivity;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import pub.devrel.easypermissions.helper.PermissionHelper;
+
+/**
+ * {@link PermissionHelper#newInstance} for each type of host, and {@link
+ * PermissionHelper#getInstance} that the library calls instead since helpers are reused.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PermissionHelperBenchmark {
+
+    private Activity mActivity;
+    private AppCompatActivity mAppCompatActivity;
+    private Fragment mFragment;
+    private android.app.Fragment mFrameworkFragment;
+
+    @Setup
+    public void setUp() {
+        mActivity = Hosts.newActivity(Activity.class);
+        mAppCompatActivity = Hosts.newActivity(AppCompatActivity.class);
+        mFragment = new Fragment();
+        mFrameworkFragment = new android.app.Fragment();
+    }
+
+    @Benchmark
+    public PermissionHelper newInstance_activity() {
+        return PermissionHelper.newInstance(mActivity);
+    }
+
+    @Benchmark
+    public PermissionHelper newInstance_appCompatActivity() {
+        return PermissionHelper.newInstance(mAppCompatActivity);
+    }
+
+    @Benchmark
+    public PermissionHelper newInstance_fragment() {
+        return PermissionHelper.newInstance(mFragment);
+    }
+
+    @Benchmark
+    public PermissionHelper newInstance_frameworkFragment() {
+        return PermissionHelper.newInstance(mFrameworkFragment);
+    }
+
+    @Benchmark
+    public PermissionHelper getInstance_activity() {
+        return PermissionHelper.getInstance(mActivity);
+    }
+}
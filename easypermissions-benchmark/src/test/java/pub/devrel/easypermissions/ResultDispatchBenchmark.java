@@ -0,0 +1,42 @@
+package pub.devrel.easypermissions;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code onRequestPermissionsResult} handing a partly denied result to several {@link
+ * EasyPermissions.PermissionCallbacks}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ResultDispatchBenchmark {
+
+    @Param({"1", "5", "10"})
+    public int receivers;
+
+    private Object[] mReceivers;
+
+    @Setup
+    public void setUp() {
+        mReceivers = new Object[receivers];
+        for (int i = 0; i < receivers; i++) {
+            mReceivers[i] = new Hosts.CountingCallbacks();
+        }
+    }
+
+    @Benchmark
+    public Object[] onRequestPermissionsResult() {
+        EasyPermissions.onRequestPermissionsResult(Hosts.CODE, Hosts.PERMS, Hosts.ONE_DENIED,
+                mReceivers);
+        return mReceivers;
+    }
+}
@@ -0,0 +1,339 @@
+/*
+ * Copyright Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pub.devrel.easypermissions.compiler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates a {@code <Host>_PermissionDispatcher} for every class declaring methods annotated
+ * with {@code @AfterPermissionGranted}, so that {@code EasyPermissions.onRequestPermissionsResult}
+ * can run them with a plain {@code switch(requestCode)} instead of scanning the class with
+ * reflection.
+ * <p>
+ * The generated dispatcher of a class also covers the annotated methods inherited from its
+ * superclasses, and behaves like the reflection path: an annotated method overridden in a
+ * subclass runs once per annotation, and an exception thrown by one method is logged without
+ * stopping the others. Annotated methods must return {@code void} and take no parameters,
+ * anything else is reported as a compile error. No dispatcher is generated for a class whose
+ * annotated methods cannot be called from its package, e.g. private ones, it keeps using
+ * reflection.
+ */
+public class PermissionDispatcherProcessor extends AbstractProcessor {
+
+    static final String ANNOTATION = "pub.devrel.easypermissions.AfterPermissionGranted";
+    static final String DISPATCHER_INTERFACE = "pub.devrel.easypermissions.PermissionDispatcher";
+    static final String FAILURES = DISPATCHER_INTERFACE + ".Failures";
+    static final String SUFFIX = "_PermissionDispatcher";
+
+    private Elements mElements;
+    private Filer mFiler;
+    private Messager mMessager;
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        mElements = processingEnv.getElementUtils();
+        mFiler = processingEnv.getFiler();
+        mMessager = processingEnv.getMessager();
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(ANNOTATION);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement annotation = mElements.getTypeElement(ANNOTATION);
+        if (annotation == null) {
+            return false;
+        }
+
+        // Collect every host class that declares at least one annotated method
+        Set<TypeElement> hosts = new LinkedHashSet<>();
+        for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+            if (element.getKind() != ElementKind.METHOD) {
+                error(element, "@AfterPermissionGranted can only be applied to methods.");
+                continue;
+            }
+            hosts.add((TypeElement) element.getEnclosingElement());
+        }
+
+        for (TypeElement host : hosts) {
+            // The generated class could not refer to it, reflection can
+            if (!isAccessible(host)) {
+                continue;
+            }
+
+            String packageName = getPackageName(host);
+            Map<Integer, List<ExecutableElement>> methodsByCode = new LinkedHashMap<>();
+            if (collectMethods(host, packageName, methodsByCode)) {
+                writeDispatcher(host, packageName, methodsByCode);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Walk {@code host} and its superclasses, grouping the annotated methods by request code in
+     * the same order reflection would visit them (subclass first).
+     *
+     * @return {@code false} if no dispatcher can be generated, either because an invalid method
+     * was found and an error was reported, or because a method has to be run with reflection.
+     */
+    private boolean collectMethods(TypeElement host,
+                                   String packageName,
+                                   Map<Integer, List<ExecutableElement>> methodsByCode) {
+        boolean valid = true;
+        boolean reflective = false;
+
+        TypeElement type = host;
+        while (type != null && !isFrameworkType(type)) {
+            for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+                AnnotationMirror mirror = getAnnotationMirror(method);
+                if (mirror == null) {
+                    continue;
+                }
+                if (!validateMethod(type, method)) {
+                    valid = false;
+                    continue;
+                }
+                if (!isAccessible(packageName, type, method)) {
+                    reflective = true;
+                    continue;
+                }
+
+                // Not deduplicated: reflection also invokes an override once for every class
+                // that annotates it, with the request code of each annotation
+                int requestCode = getRequestCode(mirror);
+                List<ExecutableElement> methods = methodsByCode.get(requestCode);
+                if (methods == null) {
+                    methods = new ArrayList<>();
+                    methodsByCode.put(requestCode, methods);
+                }
+                methods.add(method);
+            }
+            type = getSuperclass(type);
+        }
+        return valid && !reflective;
+    }
+
+    private boolean validateMethod(TypeElement declaringType, ExecutableElement method) {
+        if (method.getReturnType().getKind() != TypeKind.VOID
+                || !method.getParameters().isEmpty()) {
+            error(method, "Cannot execute method %s.%s() because it is non-void method and/or has "
+                    + "input parameters.",
+                    declaringType.getQualifiedName(), method.getSimpleName());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return {@code true} if code in {@code packageName} can call {@code method} of {@code
+     * declaringType}.
+     */
+    private boolean isAccessible(String packageName,
+                                 TypeElement declaringType,
+                                 ExecutableElement method) {
+        Set<Modifier> modifiers = method.getModifiers();
+        if (modifiers.contains(Modifier.PRIVATE) || !isAccessible(declaringType)) {
+            return false;
+        }
+        // Static methods are called on their declaring class, which has to be visible as well
+        if (modifiers.contains(Modifier.STATIC) && !isVisible(packageName, declaringType)) {
+            return false;
+        }
+        return modifiers.contains(Modifier.PUBLIC)
+                || packageName.equals(getPackageName(declaringType));
+    }
+
+    /**
+     * @return {@code true} if code in {@code packageName} can refer to {@code type} by name.
+     */
+    private boolean isVisible(String packageName, TypeElement type) {
+        if (packageName.equals(getPackageName(type))) {
+            return isAccessible(type);
+        }
+        for (Element e = type; e instanceof TypeElement; e = e.getEnclosingElement()) {
+            if (!e.getModifiers().contains(Modifier.PUBLIC)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return {@code true} if {@code type} and the classes enclosing it are not private.
+     */
+    private boolean isAccessible(TypeElement type) {
+        for (Element e = type; e instanceof TypeElement; e = e.getEnclosingElement()) {
+            if (e.getModifiers().contains(Modifier.PRIVATE)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeDispatcher(TypeElement host,
+                                 String packageName,
+                                 Map<Integer, List<ExecutableElement>> methodsByCode) {
+        String binaryName = mElements.getBinaryName(host).toString();
+        String className = (packageName.isEmpty()
+                ? binaryName
+                : binaryName.substring(packageName.length() + 1)) + SUFFIX;
+        String hostType = host.getQualifiedName().toString();
+        if (!host.getTypeParameters().isEmpty()) {
+            StringBuilder wildcards = new StringBuilder("<");
+            for (int i = 0; i < host.getTypeParameters().size(); i++) {
+                wildcards.append(i == 0 ? "?" : ", ?");
+            }
+            hostType += wildcards.append('>');
+        }
+
+        StringBuilder source = new StringBuilder();
+        source.append("// Generated code from EasyPermissions. Do not modify!\n");
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("public final class ").append(className)
+                .append(" implements ").append(DISPATCHER_INTERFACE)
+                .append('<').append(hostType).append("> {\n\n")
+                .append("    @Override\n")
+                .append("    public void dispatch(").append(hostType)
+                .append(" target, int requestCode) {\n")
+                .append("        switch (requestCode) {\n");
+        for (Map.Entry<Integer, List<ExecutableElement>> entry : methodsByCode.entrySet()) {
+            source.append("            case ").append(entry.getKey()).append(":\n");
+            for (ExecutableElement method : entry.getValue()) {
+                String receiver = method.getModifiers().contains(Modifier.STATIC)
+                        ? ((TypeElement) method.getEnclosingElement()).getQualifiedName().toString()
+                        : "target";
+                // Caught like Method.invoke() does, so that one failing method does not stop
+                // the others and checked exceptions need no declaration
+                source.append("                try {\n")
+                        .append("                    ").append(receiver).append('.')
+                        .append(method.getSimpleName()).append("();\n")
+                        .append("                } catch (Throwable e) {\n")
+                        .append("                    ").append(FAILURES).append(".report(e);\n")
+                        .append("                }\n");
+            }
+            source.append("                break;\n");
+        }
+        source.append("            default:\n")
+                .append("                break;\n")
+                .append("        }\n")
+                .append("    }\n")
+                .append("}\n");
+
+        String qualifiedName = packageName.isEmpty() ? className : packageName + "." + className;
+        try {
+            JavaFileObject file = mFiler.createSourceFile(qualifiedName, host);
+            Writer writer = file.openWriter();
+            try {
+                writer.write(source.toString());
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            error(host, "Unable to write permission dispatcher for %s: %s",
+                    host.getQualifiedName(), e.getMessage());
+        }
+    }
+
+    private AnnotationMirror getAnnotationMirror(ExecutableElement method) {
+        for (AnnotationMirror mirror : method.getAnnotationMirrors()) {
+            TypeElement type = (TypeElement) mirror.getAnnotationType().asElement();
+            if (type.getQualifiedName().contentEquals(ANNOTATION)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    private int getRequestCode(AnnotationMirror mirror) {
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                : mirror.getElementValues().entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals("value")) {
+                return (Integer) entry.getValue().getValue();
+            }
+        }
+        throw new IllegalStateException("@AfterPermissionGranted without a value");
+    }
+
+    private TypeElement getSuperclass(TypeElement type) {
+        TypeMirror superclass = type.getSuperclass();
+        if (superclass.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        return (TypeElement) ((DeclaredType) superclass).asElement();
+    }
+
+    private String getPackageName(TypeElement type) {
+        PackageElement pkg = mElements.getPackageOf(type);
+        return pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+    }
+
+    /**
+     * Framework classes never declare {@code @AfterPermissionGranted} methods, so there is no
+     * point walking into them.
+     */
+    private boolean isFrameworkType(TypeElement type) {
+        String name = type.getQualifiedName().toString();
+        return name.startsWith("android.")
+                || name.startsWith("androidx.")
+                || name.startsWith("java.");
+    }
+
+    private void error(Element element, String message, Object... args) {
+        mMessager.printMessage(Diagnostic.Kind.ERROR, String.format(message, args), element);
+    }
+}
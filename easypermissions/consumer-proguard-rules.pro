@@ -0,0 +1,10 @@
+# ProGuard rules applied to apps consuming the easypermissions library.
+
+# Generated @AfterPermissionGranted dispatchers are looked up by the name of their host class.
+-keep class * implements pub.devrel.easypermissions.PermissionDispatcher { <init>(); }
+-keepnames class * { @pub.devrel.easypermissions.AfterPermissionGranted <methods>; }
+
+# Debug logging is removed from minified builds, messages are never built.
+-assumenosideeffects class pub.devrel.easypermissions.PermissionLog {
+    public static void d(...);
+}
@@ -0,0 +1,144 @@
+package pub.devrel.easypermissions;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.SparseArray;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Process-wide index of the {@link AfterPermissionGranted} methods of receiver classes, used when
+ * no generated {@link PermissionDispatcher} is available.
+ * <p>
+ * Each class is scanned once, stopping at the first framework class, and the matching methods are
+ * stored by request code already made accessible. The index is safe to use from any thread.
+ */
+final class AnnotatedMethodIndex {
+
+    private static final Method[] NO_METHODS = new Method[0];
+
+    private static final ConcurrentMap<Class<?>, Entry> INDEX = new ConcurrentHashMap<>();
+
+    private AnnotatedMethodIndex() {
+    }
+
+    /**
+     * Get the methods of {@code clazz} annotated with {@link AfterPermissionGranted} for {@code
+     * requestCode}, subclass methods first.
+     *
+     * @throws RuntimeException if one of those methods cannot be invoked without arguments.
+     */
+    @NonNull
+    static Method[] getMethods(@NonNull Class<?> clazz, int requestCode) {
+        Entry entry = INDEX.get(clazz);
+        if (entry == null) {
+            entry = build(clazz);
+            Entry previous = INDEX.putIfAbsent(clazz, entry);
+            if (previous != null) {
+                entry = previous;
+            }
+        }
+
+        Method invalid = entry.invalid.get(requestCode);
+        if (invalid != null) {
+            throw new RuntimeException("Cannot execute method " + invalid.getName()
+                    + " because it is non-void method and/or has input parameters.");
+        }
+        return entry.methods.get(requestCode, NO_METHODS);
+    }
+
+    /**
+     * Framework classes never declare {@link AfterPermissionGranted} methods but have hundreds of
+     * declared methods, so class hierarchy walks stop there.
+     */
+    static boolean isFrameworkClass(@NonNull Class<?> clazz) {
+        String name = clazz.getName();
+        return name.startsWith("android.")
+                || name.startsWith("androidx.")
+                || name.startsWith("java.");
+    }
+
+    @NonNull
+    private static Entry build(@NonNull Class<?> clazz) {
+        SparseArray<List<Method>> found = new SparseArray<>();
+        SparseArray<Method> invalid = new SparseArray<>();
+
+        // AndroidAnnotations generates a MyActivity_ subclass, start from the user's class instead
+        Class<?> c = AndroidAnnotations.isGenerated(clazz) ? clazz.getSuperclass() : clazz;
+        for (; c != null && !isFrameworkClass(c); c = c.getSuperclass()) {
+            for (Method method : c.getDeclaredMethods()) {
+                AfterPermissionGranted ann = method.getAnnotation(AfterPermissionGranted.class);
+                if (ann == null) {
+                    continue;
+                }
+                // Method must be void so that we can invoke it
+                if (method.getParameterTypes().length > 0) {
+                    if (invalid.get(ann.value()) == null) {
+                        invalid.put(ann.value(), method);
+                    }
+                    continue;
+                }
+                // Make method accessible if private
+                if (!method.isAccessible()) {
+                    method.setAccessible(true);
+                }
+
+                List<Method> methods = found.get(ann.value());
+                if (methods == null) {
+                    methods = new ArrayList<>();
+                    found.put(ann.value(), methods);
+                }
+                methods.add(method);
+            }
+        }
+
+        SparseArray<Method[]> methods = new SparseArray<>(found.size());
+        for (int i = 0; i < found.size(); i++) {
+            List<Method> list = found.valueAt(i);
+            methods.put(found.keyAt(i), list.toArray(new Method[list.size()]));
+        }
+        return new Entry(methods, invalid);
+    }
+
+    /**
+     * Immutable once published through {@link #INDEX}.
+     */
+    private static final class Entry {
+
+        final SparseArray<Method[]> methods;
+        final SparseArray<Method> invalid;
+
+        Entry(SparseArray<Method[]> methods, SparseArray<Method> invalid) {
+            this.methods = methods;
+            this.invalid = invalid;
+        }
+    }
+
+    /**
+     * Resolves the AndroidAnnotations marker interface once, on first use.
+     */
+    private static final class AndroidAnnotations {
+
+        @Nullable
+        private static final Class<?> HAS_VIEWS = findHasViews();
+
+        static boolean isGenerated(@NonNull Class<?> clazz) {
+            return HAS_VIEWS != null
+                    && clazz.getSimpleName().endsWith("_")
+                    && HAS_VIEWS.isAssignableFrom(clazz);
+        }
+
+        @Nullable
+        private static Class<?> findHasViews() {
+            try {
+                return Class.forName("org.androidannotations.api.view.HasViews");
+            } catch (ClassNotFoundException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -4,8 +4,10 @@ import android.app.Activity;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
+import android.net.Uri;
 import android.os.Parcel;
 import android.os.Parcelable;
+import android.provider.Settings;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.RestrictTo;
@@ -13,7 +15,7 @@ import android.support.annotation.StringRes;
 import android.support.annotation.StyleRes;
 import android.support.v4.app.Fragment;
 import android.support.v7.app.AlertDialog;
-import android.text.TextUtils;
+import android.support.v7.app.AppCompatActivity;
 
 /**
  * Dialog to prompt the user to go to the app's settings screen and enable permissions. If the user
@@ -42,31 +44,34 @@ public class AppSettingsDialog implements Parcelable {
 
     @StyleRes
     private final int mThemeResId;
-    private final String mRationale;
-    private final String mTitle;
-    private final String mPositiveButtonText;
-    private final String mNegativeButtonText;
+    private final TextResource mRationale;
+    private final TextResource mTitle;
+    private final TextResource mPositiveButtonText;
+    private final TextResource mNegativeButtonText;
     private final int mRequestCode;
+    private final boolean mShowInHost;
 
     private Object mActivityOrFragment;
     private Context mContext;
 
     private AppSettingsDialog(Parcel in) {
         mThemeResId = in.readInt();
-        mRationale = in.readString();
-        mTitle = in.readString();
-        mPositiveButtonText = in.readString();
-        mNegativeButtonText = in.readString();
+        mRationale = TextResource.readFromParcel(in);
+        mTitle = TextResource.readFromParcel(in);
+        mPositiveButtonText = TextResource.readFromParcel(in);
+        mNegativeButtonText = TextResource.readFromParcel(in);
         mRequestCode = in.readInt();
+        mShowInHost = false;
     }
 
     private AppSettingsDialog(@NonNull final Object activityOrFragment,
                               @StyleRes int themeResId,
-                              @Nullable String rationale,
-                              @Nullable String title,
-                              @Nullable String positiveButtonText,
-                              @Nullable String negativeButtonText,
-                              int requestCode) {
+                              @NonNull TextResource rationale,
+                              @NonNull TextResource title,
+                              @NonNull TextResource positiveButtonText,
+                              @NonNull TextResource negativeButtonText,
+                              int requestCode,
+                              boolean showInHost) {
         setActivityOrFragment(activityOrFragment);
         mThemeResId = themeResId;
         mRationale = rationale;
@@ -74,6 +79,7 @@ public class AppSettingsDialog implements Parcelable {
         mPositiveButtonText = positiveButtonText;
         mNegativeButtonText = negativeButtonText;
         mRequestCode = requestCode;
+        mShowInHost = showInHost;
     }
 
     static AppSettingsDialog fromIntent(Intent intent, Activity activity) {
@@ -111,7 +117,44 @@ public class AppSettingsDialog implements Parcelable {
      * Display the built dialog.
      */
     public void show() {
-        startForResult(AppSettingsDialogHolderActivity.createShowDialogIntent(mContext, this));
+        PermissionTrace.beginSection(PermissionTrace.SHOW_APP_SETTINGS_DIALOG);
+        try {
+            if (mShowInHost && canShowInHost()) {
+                showInHost();
+            } else {
+                startForResult(
+                        AppSettingsDialogHolderActivity.createShowDialogIntent(mContext, this));
+            }
+        } finally {
+            PermissionTrace.endSection();
+        }
+    }
+
+    /**
+     * Show the dialog over the host and start the settings screen from there, without going
+     * through {@link AppSettingsDialogHolderActivity}.
+     */
+    private void showInHost() {
+        showDialog(new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                startForResult(createAppSettingsIntent(mContext));
+            }
+        }, null);
+    }
+
+    /**
+     * The dialog is an AppCompat dialog and needs an AppCompat themed, live Activity.
+     */
+    private boolean canShowInHost() {
+        return mContext instanceof AppCompatActivity
+                && !((AppCompatActivity) mContext).isFinishing();
+    }
+
+    @NonNull
+    static Intent createAppSettingsIntent(@NonNull Context context) {
+        return new Intent(Settings.ACTION_APPLICATION_DETAILS_SETTINGS)
+                .setData(Uri.fromParts("package", context.getPackageName(), null));
     }
 
     /**
@@ -127,10 +170,10 @@ public class AppSettingsDialog implements Parcelable {
         }
         return builder
                 .setCancelable(false)
-                .setTitle(mTitle)
-                .setMessage(mRationale)
-                .setPositiveButton(mPositiveButtonText, positiveListener)
-                .setNegativeButton(mNegativeButtonText, negativeListener)
+                .setTitle(mTitle.resolve(mContext))
+                .setMessage(mRationale.resolve(mContext))
+                .setPositiveButton(mPositiveButtonText.resolve(mContext), positiveListener)
+                .setNegativeButton(mNegativeButtonText.resolve(mContext), negativeListener)
                 .show();
     }
 
@@ -142,10 +185,11 @@ public class AppSettingsDialog implements Parcelable {
     @Override
     public void writeToParcel(@NonNull Parcel dest, int flags) {
         dest.writeInt(mThemeResId);
-        dest.writeString(mRationale);
-        dest.writeString(mTitle);
-        dest.writeString(mPositiveButtonText);
-        dest.writeString(mNegativeButtonText);
+        // Resources are written as their id, and only literal texts in full
+        mRationale.writeToParcel(dest);
+        mTitle.writeToParcel(dest);
+        mPositiveButtonText.writeToParcel(dest);
+        mNegativeButtonText.writeToParcel(dest);
         dest.writeInt(mRequestCode);
     }
 
@@ -155,14 +199,14 @@ public class AppSettingsDialog implements Parcelable {
     public static class Builder {
 
         private final Object mActivityOrFragment;
-        private final Context mContext;
         @StyleRes
         private int mThemeResId = -1;
-        private String mRationale;
-        private String mTitle;
-        private String mPositiveButtonText;
-        private String mNegativeButtonText;
+        private TextResource mRationale;
+        private TextResource mTitle;
+        private TextResource mPositiveButtonText;
+        private TextResource mNegativeButtonText;
         private int mRequestCode = -1;
+        private boolean mShowInHost;
 
         /**
          * Create a new Builder for an {@link AppSettingsDialog}.
@@ -171,7 +215,6 @@ public class AppSettingsDialog implements Parcelable {
          */
         public Builder(@NonNull Activity activity) {
             mActivityOrFragment = activity;
-            mContext = activity;
         }
 
         /**
@@ -181,7 +224,6 @@ public class AppSettingsDialog implements Parcelable {
          */
         public Builder(@NonNull Fragment fragment) {
             mActivityOrFragment = fragment;
-            mContext = fragment.getContext();
         }
 
         /**
@@ -191,7 +233,6 @@ public class AppSettingsDialog implements Parcelable {
          */
         public Builder(@NonNull android.app.Fragment fragment) {
             mActivityOrFragment = fragment;
-            mContext = fragment.getActivity();
         }
 
         /**
@@ -206,7 +247,7 @@ public class AppSettingsDialog implements Parcelable {
          * Set the title dialog. Default is "Permissions Required".
          */
         public Builder setTitle(String title) {
-            mTitle = title;
+            mTitle = TextResource.of(title);
             return this;
         }
 
@@ -214,7 +255,18 @@ public class AppSettingsDialog implements Parcelable {
          * Set the title dialog. Default is "Permissions Required".
          */
         public Builder setTitle(@StringRes int title) {
-            mTitle = mContext.getString(title);
+            mTitle = TextResource.of(title);
+            return this;
+        }
+
+        /**
+         * Set the title dialog from a string resource formatted with {@code formatArgs}, resolved
+         * when the dialog is shown. Arguments must be strings or boxed primitives.
+         *
+         * @throws IllegalArgumentException if an argument is of another type.
+         */
+        public Builder setTitle(@StringRes int title, Object... formatArgs) {
+            mTitle = TextResource.of(title, formatArgs);
             return this;
         }
 
@@ -224,7 +276,7 @@ public class AppSettingsDialog implements Parcelable {
          * Open the app settings screen to modify app permissions."
          */
         public Builder setRationale(String rationale) {
-            mRationale = rationale;
+            mRationale = TextResource.of(rationale);
             return this;
         }
 
@@ -234,7 +286,18 @@ public class AppSettingsDialog implements Parcelable {
          * Open the app settings screen to modify app permissions."
          */
         public Builder setRationale(@StringRes int rationale) {
-            mRationale = mContext.getString(rationale);
+            mRationale = TextResource.of(rationale);
+            return this;
+        }
+
+        /**
+         * Set the rationale dialog from a string resource formatted with {@code formatArgs},
+         * resolved when the dialog is shown. Arguments must be strings or boxed primitives.
+         *
+         * @throws IllegalArgumentException if an argument is of another type.
+         */
+        public Builder setRationale(@StringRes int rationale, Object... formatArgs) {
+            mRationale = TextResource.of(rationale, formatArgs);
             return this;
         }
 
@@ -242,7 +305,7 @@ public class AppSettingsDialog implements Parcelable {
          * Set the positive button text, default is {@link android.R.string#ok}.
          */
         public Builder setPositiveButton(String text) {
-            mPositiveButtonText = text;
+            mPositiveButtonText = TextResource.of(text);
             return this;
         }
 
@@ -250,7 +313,7 @@ public class AppSettingsDialog implements Parcelable {
          * Set the positive button text, default is {@link android.R.string#ok}.
          */
         public Builder setPositiveButton(@StringRes int textId) {
-            mPositiveButtonText = mContext.getString(textId);
+            mPositiveButtonText = TextResource.of(textId);
             return this;
         }
 
@@ -263,7 +326,7 @@ public class AppSettingsDialog implements Parcelable {
          * permissions, then the request was cancelled.
          */
         public Builder setNegativeButton(String text) {
-            mNegativeButtonText = text;
+            mNegativeButtonText = TextResource.of(text);
             return this;
         }
 
@@ -271,7 +334,7 @@ public class AppSettingsDialog implements Parcelable {
          * Set the negative button text, default is {@link android.R.string#cancel}.
          */
         public Builder setNegativeButton(@StringRes int textId) {
-            mNegativeButtonText = mContext.getString(textId);
+            mNegativeButtonText = TextResource.of(textId);
             return this;
         }
 
@@ -285,19 +348,31 @@ public class AppSettingsDialog implements Parcelable {
             return this;
         }
 
+        /**
+         * Show the dialog directly in the host and start the settings screen from it with the
+         * request code, instead of going through an intermediate Activity. Default is {@code
+         * false}.
+         * <p>
+         * Hosts that are not in an {@link AppCompatActivity} keep using the intermediate Activity.
+         * In this mode the dialog is not restored after a configuration change, and the negative
+         * button only dismisses the dialog: no result is delivered to {@link
+         * Activity#onActivityResult(int, int, Intent)}.
+         */
+        public Builder setShowInHost(boolean showInHost) {
+            mShowInHost = showInHost;
+            return this;
+        }
+
         /**
          * Build the {@link AppSettingsDialog} from the specified options. Generally followed by a
          * call to {@link AppSettingsDialog#show()}.
          */
         public AppSettingsDialog build() {
-            mRationale = TextUtils.isEmpty(mRationale) ?
-                    mContext.getString(R.string.rationale_ask_again) : mRationale;
-            mTitle = TextUtils.isEmpty(mTitle) ?
-                    mContext.getString(R.string.title_settings_dialog) : mTitle;
-            mPositiveButtonText = TextUtils.isEmpty(mPositiveButtonText) ?
-                    mContext.getString(android.R.string.ok) : mPositiveButtonText;
-            mNegativeButtonText = TextUtils.isEmpty(mNegativeButtonText) ?
-                    mContext.getString(android.R.string.cancel) : mNegativeButtonText;
+            // Texts are resolved when the dialog is shown, so defaults are kept as resource ids
+            mRationale = orDefault(mRationale, R.string.rationale_ask_again);
+            mTitle = orDefault(mTitle, R.string.title_settings_dialog);
+            mPositiveButtonText = orDefault(mPositiveButtonText, android.R.string.ok);
+            mNegativeButtonText = orDefault(mNegativeButtonText, android.R.string.cancel);
             mRequestCode = mRequestCode > 0 ? mRequestCode : DEFAULT_SETTINGS_REQ_CODE;
 
             return new AppSettingsDialog(
@@ -307,7 +382,14 @@ public class AppSettingsDialog implements Parcelable {
                     mTitle,
                     mPositiveButtonText,
                     mNegativeButtonText,
-                    mRequestCode);
+                    mRequestCode,
+                    mShowInHost);
+        }
+
+        @NonNull
+        private static TextResource orDefault(@Nullable TextResource text,
+                                              @StringRes int defaultResId) {
+            return text == null || text.isEmpty() ? TextResource.of(defaultResId) : text;
         }
 
     }
@@ -5,9 +5,7 @@ import android.app.Dialog;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
-import android.net.Uri;
 import android.os.Bundle;
-import android.provider.Settings;
 import android.support.annotation.RestrictTo;
 import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
@@ -40,9 +38,7 @@ public class AppSettingsDialogHolderActivity extends AppCompatActivity implement
     @Override
     public void onClick(DialogInterface dialog, int which) {
         if (which == Dialog.BUTTON_POSITIVE) {
-            startActivityForResult(
-                    new Intent(Settings.ACTION_APPLICATION_DETAILS_SETTINGS)
-                            .setData(Uri.fromParts("package", getPackageName(), null)),
+            startActivityForResult(AppSettingsDialog.createAppSettingsIntent(this),
                     APP_SETTINGS_RC);
         } else if (which == Dialog.BUTTON_NEGATIVE) {
             setResult(Activity.RESULT_CANCELED);
@@ -55,6 +51,8 @@ public class AppSettingsDialogHolderActivity extends AppCompatActivity implement
     @Override
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
+        // Permissions may have been changed in the settings screen
+        PermissionCache.invalidate();
         setResult(resultCode, data);
         finish();
     }
@@ -0,0 +1,280 @@
+package pub.devrel.easypermissions;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs {@link EasyPermissions#hasPermissions(Context, String...)} on a caller supplied {@link
+ * Executor} and posts the outcome to the main thread.
+ * <p>
+ * Checks hold the application context only. The callback is held until the outcome is delivered
+ * or the check is cancelled, so a callback tied to an Activity should be cancelled through the
+ * returned future when the Activity is destroyed.
+ * <p>
+ * If the check fails on the executor, e.g. because of a transient package manager error, the
+ * failure is logged and the permissions are checked again on the main thread before calling back.
+ */
+final class AsyncPermissionCheck {
+
+    private static final String TAG = "AsyncPermissionCheck";
+
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+    private AsyncPermissionCheck() {
+    }
+
+    @NonNull
+    static Future<Boolean> check(@NonNull Context context,
+                                 @NonNull Executor executor,
+                                 @Nullable EasyPermissions.PermissionCheckCallback callback,
+                                 @NonNull String... perms) {
+        SingleCheck check = new SingleCheck(context.getApplicationContext(), callback, perms);
+        executor.execute(check);
+        return check;
+    }
+
+    @NonNull
+    static Future<boolean[]> checkAll(
+            @NonNull Context context,
+            @NonNull Executor executor,
+            @Nullable EasyPermissions.BulkPermissionCheckCallback callback,
+            @NonNull String[]... groups) {
+        BulkCheck check = new BulkCheck(context.getApplicationContext(), callback, groups);
+        check.start(executor);
+        return check;
+    }
+
+    @NonNull
+    private static Callable<Boolean> checkCallable(@NonNull final Context context,
+                                                   @NonNull final String[] perms) {
+        return new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return EasyPermissions.hasPermissions(context, perms);
+            }
+        };
+    }
+
+    /**
+     * Check of a single set of permissions.
+     */
+    private static class SingleCheck extends FutureTask<Boolean> {
+
+        private final Context mContext;
+        private final String[] mPerms;
+
+        @Nullable
+        private volatile EasyPermissions.PermissionCheckCallback mCallback;
+
+        SingleCheck(@NonNull Context context,
+                    @Nullable EasyPermissions.PermissionCheckCallback callback,
+                    @NonNull String[] perms) {
+            super(checkCallable(context, perms));
+            mContext = context;
+            mPerms = perms;
+            mCallback = callback;
+        }
+
+        @Override
+        protected void done() {
+            if (mCallback == null || isCancelled()) {
+                return;
+            }
+            MAIN_HANDLER.post(new Runnable() {
+                @Override
+                public void run() {
+                    EasyPermissions.PermissionCheckCallback callback = mCallback;
+                    // Cancelled while the result was on its way
+                    if (callback == null || isCancelled()) {
+                        return;
+                    }
+                    mCallback = null;
+                    callback.onPermissionsChecked(outcome());
+                }
+            });
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                mCallback = null;
+            }
+            return cancelled;
+        }
+
+        private boolean outcome() {
+            try {
+                return get();
+            } catch (InterruptedException | ExecutionException e) {
+                PermissionLog.w(TAG, "Background permission check failed, checking again", e);
+                return EasyPermissions.hasPermissions(mContext, mPerms);
+            }
+        }
+    }
+
+    /**
+     * Checks of several permission groups, one executor task per group.
+     */
+    private static class BulkCheck implements Future<boolean[]> {
+
+        private final Context mContext;
+        private final String[][] mGroups;
+        private final FutureTask[] mTasks;
+        private final boolean[] mResults;
+        private final boolean[] mFailed;
+        private final AtomicInteger mRemaining;
+        private final CountDownLatch mDone = new CountDownLatch(1);
+
+        @Nullable
+        private volatile EasyPermissions.BulkPermissionCheckCallback mCallback;
+        private volatile boolean mCancelled;
+        private volatile Throwable mFailure;
+
+        BulkCheck(@NonNull Context context,
+                  @Nullable EasyPermissions.BulkPermissionCheckCallback callback,
+                  @NonNull String[][] groups) {
+            mContext = context;
+            mGroups = groups;
+            mCallback = callback;
+            mTasks = new FutureTask[groups.length];
+            mResults = new boolean[groups.length];
+            mFailed = new boolean[groups.length];
+            mRemaining = new AtomicInteger(groups.length);
+            for (int i = 0; i < groups.length; i++) {
+                final int index = i;
+                mTasks[i] = new FutureTask<Boolean>(checkCallable(context, groups[i])) {
+                    @Override
+                    protected void done() {
+                        onGroupDone(index, this);
+                    }
+                };
+            }
+        }
+
+        void start(@NonNull Executor executor) {
+            if (mTasks.length == 0) {
+                finish();
+                return;
+            }
+            for (FutureTask task : mTasks) {
+                executor.execute(task);
+            }
+        }
+
+        private void onGroupDone(int index, @NonNull FutureTask<Boolean> task) {
+            if (task.isCancelled()) {
+                return;
+            }
+            try {
+                mResults[index] = task.get();
+            } catch (InterruptedException | ExecutionException e) {
+                mFailed[index] = true;
+                mFailure = e.getCause() != null ? e.getCause() : e;
+            }
+            if (mRemaining.decrementAndGet() == 0) {
+                finish();
+            }
+        }
+
+        private void finish() {
+            mDone.countDown();
+            if (mCallback == null || mCancelled) {
+                return;
+            }
+            MAIN_HANDLER.post(new Runnable() {
+                @Override
+                public void run() {
+                    EasyPermissions.BulkPermissionCheckCallback callback = mCallback;
+                    if (callback == null || mCancelled) {
+                        return;
+                    }
+                    mCallback = null;
+                    callback.onPermissionsChecked(outcome());
+                }
+            });
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (isDone()) {
+                return false;
+            }
+            mCancelled = true;
+            mCallback = null;
+            for (FutureTask task : mTasks) {
+                task.cancel(mayInterruptIfRunning);
+            }
+            mDone.countDown();
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        @Override
+        public boolean isDone() {
+            return mDone.getCount() == 0;
+        }
+
+        @Override
+        public boolean[] get() throws InterruptedException, ExecutionException {
+            mDone.await();
+            return result();
+        }
+
+        @Override
+        public boolean[] get(long timeout, @NonNull TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            if (!mDone.await(timeout, unit)) {
+                throw new TimeoutException();
+            }
+            return result();
+        }
+
+        /**
+         * @return the results, with the groups that failed on the executor checked again.
+         */
+        @NonNull
+        private boolean[] outcome() {
+            boolean[] results = mResults.clone();
+            if (mFailure != null) {
+                PermissionLog.w(TAG, "Background permission check failed, checking again",
+                        mFailure);
+                for (int i = 0; i < results.length; i++) {
+                    if (mFailed[i]) {
+                        results[i] = EasyPermissions.hasPermissions(mContext, mGroups[i]);
+                    }
+                }
+            }
+            return results;
+        }
+
+        @NonNull
+        private boolean[] result() throws ExecutionException {
+            if (mCancelled) {
+                throw new CancellationException();
+            }
+            if (mFailure != null) {
+                throw new ExecutionException(mFailure);
+            }
+            return mResults.clone();
+        }
+    }
+}
@@ -20,19 +20,26 @@ import android.app.Activity;
 import android.content.Context;
 import android.content.pm.PackageManager;
 import android.os.Build;
+import android.support.annotation.MainThread;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.annotation.StringRes;
 import android.support.v4.app.ActivityCompat;
 import android.support.v4.app.Fragment;
-import android.support.v4.content.ContextCompat;
-import android.util.Log;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
 
+import pub.devrel.easypermissions.helper.PermissionGroups;
 import pub.devrel.easypermissions.helper.PermissionHelper;
+import pub.devrel.easypermissions.helper.PermissionRequestCoordinator;
+import pub.devrel.easypermissions.helper.PermissionRequestScheduler;
+import pub.devrel.easypermissions.helper.PermissionResultRouter;
 
 /**
  * Utility to request and check System permissions for apps targeting Android M (API &gt;= 23).
@@ -42,6 +49,9 @@ public class EasyPermissions {
     /**
      * Callback interface to receive the results of {@code EasyPermissions.requestPermissions()}
      * calls.
+     * <p>
+     * The lists are read-only and shared by every receiver of a result. They can be kept after
+     * the call, copy them to make changes.
      */
     public interface PermissionCallbacks extends ActivityCompat.OnRequestPermissionsResultCallback {
 
@@ -51,23 +61,65 @@ public class EasyPermissions {
 
     }
 
+    /**
+     * Same as {@link PermissionCallbacks}, receiving the permissions as a {@link PermissionSet}.
+     */
+    public interface PermissionSetCallbacks
+            extends ActivityCompat.OnRequestPermissionsResultCallback {
+
+        void onPermissionsGranted(int requestCode, @NonNull PermissionSet perms);
+
+        void onPermissionsDenied(int requestCode, @NonNull PermissionSet perms);
+
+    }
+
+    /**
+     * Receives the outcome of {@link #hasPermissionsAsync(Context, Executor,
+     * PermissionCheckCallback, String...)} on the main thread.
+     */
+    public interface PermissionCheckCallback {
+
+        void onPermissionsChecked(boolean hasPermissions);
+
+    }
+
+    /**
+     * Receives the outcome of {@link #hasPermissionsAsync(Context, Executor,
+     * BulkPermissionCheckCallback, String[]...)} on the main thread, one entry per group.
+     */
+    public interface BulkPermissionCheckCallback {
+
+        void onPermissionsChecked(@NonNull boolean[] hasPermissions);
+
+    }
+
     private static final String TAG = "EasyPermissions";
 
     /**
      * 检测是否有权限缺失
-     * Check if the calling context has a set of permissions.
+     * Check if the calling context has a set of permissions. Safe to call from any thread.
      *
      * @param context the calling context.
      * @param perms   one ore more permissions, such as {@link Manifest.permission#CAMERA}.
      * @return true if all permissions are already granted, false if at least one permission is not
      * yet granted.
      * @see Manifest.permission
+     * @see PermissionSnapshot
      */
     public static boolean hasPermissions(Context context, @NonNull String... perms) {
+        PermissionTrace.beginSection(PermissionTrace.HAS_PERMISSIONS);
+        try {
+            return checkPermissions(context, perms);
+        } finally {
+            PermissionTrace.endSection();
+        }
+    }
+
+    private static boolean checkPermissions(Context context, @NonNull String... perms) {
         // Always return true for SDK < M, let the system deal with the permissions
         // 如果是6.0以下，都按有权限计算
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
-            Log.w(TAG, "hasPermissions: API version < M, returning true by default");
+            PermissionLog.d(TAG, "hasPermissions: API version < M, returning true by default");
             // DANGER ZONE!!! Changing this will break the library.
             return true;
         }
@@ -79,16 +131,102 @@ public class EasyPermissions {
             throw new IllegalArgumentException("Can't check permissions for null context");
         }
 
+        // 普通权限在安装时已授予，无需检测
+        // Normal permissions are granted at install time, once the manifest is indexed they are
+        // answered without asking the system
+        ManifestPermissionIndex index = ManifestPermissionIndex.peek();
+
+        // 同组权限的状态相同，只检测一次
+        boolean perGroup = PermissionGroups.isActive();
+        long checkedGroups = 0L;
+
         // 有一个权限被拒绝，则返回false
         for (String perm : perms) {
-            if (ContextCompat.checkSelfPermission(context, perm)
-                    != PackageManager.PERMISSION_GRANTED) {
+            if (index != null && index.isNormal(perm)) {
+                continue;
+            }
+            if (perGroup) {
+                long marked = PermissionGroups.markChecked(checkedGroups, perm);
+                if (marked == -1) {
+                    continue;
+                }
+                checkedGroups = marked;
+            }
+            if (!PermissionCache.isGranted(context, perm)) {
                 return false;
             }
         }
         return true;
     }
 
+    /**
+     * Check if the calling context has a set of permissions.
+     *
+     * @see #hasPermissions(Context, String...)
+     */
+    public static boolean hasPermissions(Context context, @NonNull PermissionSet perms) {
+        return hasPermissions(context, perms.toArray());
+    }
+
+    /**
+     * 异步检测权限
+     * <p>
+     * Check if the app has a set of permissions on {@code executor}, keeping the system calls off
+     * the calling thread. Can be called from any thread.
+     *
+     * @param context  any context of the app, only its application context is kept.
+     * @param executor runs the check.
+     * @param callback receives the outcome on the main thread unless the returned future was
+     *                 cancelled, may be {@code null} to only use the future.
+     * @param perms    one ore more permissions, such as {@link Manifest.permission#CAMERA}.
+     * @return a future of the outcome that can be cancelled.
+     * @see #hasPermissions(Context, String...)
+     */
+    @NonNull
+    public static Future<Boolean> hasPermissionsAsync(@NonNull Context context,
+                                                      @NonNull Executor executor,
+                                                      @Nullable PermissionCheckCallback callback,
+                                                      @NonNull String... perms) {
+        return AsyncPermissionCheck.check(context, executor, callback, perms);
+    }
+
+    /**
+     * Check several groups of permissions in parallel, each group as its own task on {@code
+     * executor}. The outcome has one entry per group, {@code true} if every permission of that
+     * group is granted.
+     *
+     * @see #hasPermissionsAsync(Context, Executor, PermissionCheckCallback, String...)
+     */
+    @NonNull
+    public static Future<boolean[]> hasPermissionsAsync(
+            @NonNull Context context,
+            @NonNull Executor executor,
+            @Nullable BulkPermissionCheckCallback callback,
+            @NonNull String[]... groups) {
+        return AsyncPermissionCheck.checkAll(context, executor, callback, groups);
+    }
+
+    /**
+     * 预加载权限状态
+     * <p>
+     * Warm up permission state off the main thread, usually from {@code Application.onCreate()}.
+     * <p>
+     * Enables the {@link PermissionCache} and fills it on {@code executor} with the grant state of
+     * every dangerous permission declared in the manifest, read in a single package manager call.
+     * The {@link ManifestPermissionIndex} is built on the way. Later {@link
+     * #hasPermissions(Context, String...)} calls are answered from memory, and only ask the system
+     * if the prefetch has not completed yet.
+     *
+     * @param context  any context of the app, only its application context is kept.
+     * @param executor runs the prefetch.
+     * @return a future of the captured snapshot.
+     */
+    @NonNull
+    public static Future<PermissionSnapshot> prefetch(@NonNull Context context,
+                                                      @NonNull Executor executor) {
+        return PermissionCache.prefetch(context, executor);
+    }
+
     /**
      * 请求权限 Activity
      * <p>
@@ -138,6 +276,42 @@ public class EasyPermissions {
                 requestCode, perms);
     }
 
+    /**
+     * Request a {@link PermissionSet} from an Activity with standard OK/Cancel buttons.
+     *
+     * @see #requestPermissions(Activity, String, int, int, int, String...)
+     */
+    public static void requestPermissions(@NonNull Activity host,
+                                          @NonNull String rationale,
+                                          int requestCode,
+                                          @NonNull PermissionSet perms) {
+        requestPermissions(host, rationale, requestCode, perms.toArray());
+    }
+
+    /**
+     * Request a {@link PermissionSet} from a Support Fragment with standard OK/Cancel buttons.
+     *
+     * @see #requestPermissions(Activity, String, int, int, int, String...)
+     */
+    public static void requestPermissions(@NonNull Fragment host,
+                                          @NonNull String rationale,
+                                          int requestCode,
+                                          @NonNull PermissionSet perms) {
+        requestPermissions(host, rationale, requestCode, perms.toArray());
+    }
+
+    /**
+     * Request a {@link PermissionSet} from a standard Fragment with standard OK/Cancel buttons.
+     *
+     * @see #requestPermissions(Activity, String, int, int, int, String...)
+     */
+    public static void requestPermissions(@NonNull android.app.Fragment host,
+                                          @NonNull String rationale,
+                                          int requestCode,
+                                          @NonNull PermissionSet perms) {
+        requestPermissions(host, rationale, requestCode, perms.toArray());
+    }
+
     /**
      * 请求权限 Activity
      * <p>
@@ -159,7 +333,7 @@ public class EasyPermissions {
             @StringRes int negativeButton,
             int requestCode,
             @NonNull String... perms) {
-        requestPermissions(PermissionHelper.newInstance(host), rationale,
+        requestPermissions(PermissionHelper.getInstance(host), rationale,
                 positiveButton, negativeButton,
                 requestCode, perms);
     }
@@ -173,7 +347,7 @@ public class EasyPermissions {
             @NonNull Fragment host, @NonNull String rationale,
             @StringRes int positiveButton, @StringRes int negativeButton,
             int requestCode, @NonNull String... perms) {
-        requestPermissions(PermissionHelper.newInstance(host), rationale,
+        requestPermissions(PermissionHelper.getInstance(host), rationale,
                 positiveButton, negativeButton,
                 requestCode, perms);
     }
@@ -185,11 +359,220 @@ public class EasyPermissions {
             @NonNull android.app.Fragment host, @NonNull String rationale,
             @StringRes int positiveButton, @StringRes int negativeButton,
             int requestCode, @NonNull String... perms) {
-        requestPermissions(PermissionHelper.newInstance(host), rationale,
+        requestPermissions(PermissionHelper.getInstance(host), rationale,
                 positiveButton, negativeButton,
                 requestCode, perms);
     }
 
+    /**
+     * Request permissions from an Activity and get the result in {@code callback}, with a request
+     * code allocated by the library.
+     * <p>
+     * Codes {@code 192} to {@code 255} are reserved for these requests, don't use them for
+     * requests made with an explicit code. The result still has to reach {@link
+     * #onRequestPermissionsResult(int, String[], int[], Object...)}, either forwarded by the host
+     * or through {@link #setResultRoutingEnabled(boolean) result routing}. The callback is dropped
+     * without being called if the Activity is destroyed first, e.g. by a configuration change, or
+     * if the requesting Fragment is no longer added when the result arrives.
+     *
+     * @param host      requesting context.
+     * @param rationale a message explaining why the application needs this set of permissions,
+     *                  will be displayed if the user rejects the request the first time.
+     * @param callback  called once with the result.
+     * @param perms     a set of permissions to be requested.
+     * @throws IllegalStateException if 64 requests are already waiting for their result.
+     */
+    public static void requestPermissions(@NonNull Activity host,
+                                          @NonNull String rationale,
+                                          @NonNull PermissionResultCallback callback,
+                                          @NonNull String... perms) {
+        requestPermissions(PermissionHelper.getInstance(host), rationale, callback, perms);
+    }
+
+    /**
+     * @see #requestPermissions(Activity, String, PermissionResultCallback, String...)
+     */
+    public static void requestPermissions(@NonNull Fragment host,
+                                          @NonNull String rationale,
+                                          @NonNull PermissionResultCallback callback,
+                                          @NonNull String... perms) {
+        requestPermissions(PermissionHelper.getInstance(host), rationale, callback, perms);
+    }
+
+    /**
+     * @see #requestPermissions(Activity, String, PermissionResultCallback, String...)
+     */
+    public static void requestPermissions(@NonNull android.app.Fragment host,
+                                          @NonNull String rationale,
+                                          @NonNull PermissionResultCallback callback,
+                                          @NonNull String... perms) {
+        requestPermissions(PermissionHelper.getInstance(host), rationale, callback, perms);
+    }
+
+    private static void requestPermissions(@NonNull PermissionHelper helper,
+                                           @NonNull String rationale,
+                                           @NonNull PermissionResultCallback callback,
+                                           @NonNull String[] perms) {
+        int requestCode = PendingCallbacks.register(helper.getHost(), helper.getContext(),
+                callback);
+        try {
+            requestPermissions(new PermissionRequest.Builder(helper, requestCode, perms)
+                    .setRationale(rationale)
+                    .build());
+        } catch (RuntimeException e) {
+            PendingCallbacks.cancel(requestCode);
+            throw e;
+        }
+    }
+
+    /**
+     * Request a set of permissions as described by a {@link PermissionRequest}, showing rationale
+     * if the system requests it.
+     *
+     * @see PermissionRequest.Builder
+     */
+    public static void requestPermissions(@NonNull PermissionRequest request) {
+        PermissionHelper helper = request.getHelper();
+        int requestCode = request.getRequestCode();
+        String[] perms = request.getPerms();
+
+        // 未在清单中声明的权限，系统会直接拒绝
+        // Undeclared permissions are denied by the system without telling why. The index is
+        // built in the background, requests made before it is ready are not checked
+        Context context = helper.getContext();
+        ManifestPermissionIndex index = Build.VERSION.SDK_INT >= Build.VERSION_CODES.M
+                && context != null ? ManifestPermissionIndex.peek(context) : null;
+        List<String> undeclared = index != null
+                ? index.getUndeclared(perms)
+                : Collections.<String>emptyList();
+        if (!undeclared.isEmpty()) {
+            PermissionLog.w(TAG, "Permissions " + undeclared + " are not declared in the "
+                    + "manifest for this API level and will be denied");
+        }
+
+        PermissionMetrics.onRequestStarted(helper, requestCode, perms);
+
+        // 全部未声明，无需询问系统
+        // Nothing the system could grant, deny without asking it
+        if (undeclared.size() == perms.length && perms.length > 0) {
+            PermissionMetrics.onRequestSkipped(context, requestCode);
+            notifyDenied(helper.getHost(), requestCode, perms);
+            return;
+        }
+
+        // 如果所有权限都存在
+        // Check for permissions before dispatching the request
+        if (hasPermissions(context, perms)) {
+            PermissionMetrics.onRequestSkipped(context, requestCode);
+            notifyAlreadyHasPermissions(helper.getHost(), requestCode, perms);
+            return;
+        }
+
+        // 有未赋予的权限，需要时先给出原因，再请求权限
+        // Request permissions, showing the rationale first if needed
+        if (helper.shouldShowRationale(perms)) {
+            PermissionMetrics.onRationaleShown(context, requestCode);
+            RationaleRenderer renderer = request.getRationaleRenderer() != null
+                    ? request.getRationaleRenderer()
+                    : RationaleRenderers.getDefault();
+            renderer.showRationale(request, new RationaleAnswer(request));
+        } else {
+            helper.submitRequestPermissions(requestCode, request.getPriority(), perms);
+        }
+    }
+
+    /**
+     * Show rationales with {@code renderer} unless a request sets its own. Default is {@link
+     * RationaleRenderers#FRAGMENT}.
+     */
+    public static void setDefaultRationaleRenderer(@NonNull RationaleRenderer renderer) {
+        RationaleRenderers.setDefault(renderer);
+    }
+
+    /**
+     * Queue system permission requests process-wide so that only one is shown at a time, most
+     * urgent first (see {@link PermissionRequest.Builder#setPriority(int)}). Disabled by default.
+     * <p>
+     * The next request is issued when the result of the current one is passed to {@link
+     * #onRequestPermissionsResult(int, String[], int[], Object...)}, or at the latest when its
+     * Activity resumes. Queue depth and wait times are available from {@link
+     * PermissionRequestScheduler}.
+     */
+    public static void setRequestSchedulingEnabled(boolean enabled) {
+        PermissionRequestScheduler.setEnabled(enabled);
+    }
+
+    /**
+     * Check only one permission per permission group in {@link #hasPermissions(Context,
+     * String...)} and when deciding whether to show a rationale, e.g. {@code READ_CONTACTS} answers
+     * for {@code WRITE_CONTACTS}. Disabled by default.
+     * <p>
+     * Only applies on API 23 to 25, where a group is granted or denied as a whole for all of its
+     * permissions declared in the manifest. Newer versions track each permission on its own and
+     * keep checking every permission.
+     */
+    public static void setGroupDeduplicationEnabled(boolean enabled) {
+        PermissionGroups.setEnabled(enabled);
+    }
+
+    /**
+     * Merge permission requests made by an Activity and its Fragments while handling the same main
+     * thread message, e.g. in their {@code onResume()}, into a single system request, and attach
+     * duplicate requests to the one already in flight. Disabled by default.
+     * <p>
+     * Merged results are routed back through the {@code onRequestPermissionsResult} of each
+     * original host, so the host that issued the request must forward its result to {@link
+     * #onRequestPermissionsResult(int, String[], int[], Object...)}, unless {@link
+     * #setResultRoutingEnabled(boolean) result routing} is enabled.
+     */
+    public static void setRequestCoalescingEnabled(boolean enabled) {
+        PermissionRequestCoordinator.setEnabled(enabled);
+    }
+
+    /**
+     * Deliver permission results to the Activity or Fragment that made the request, without it
+     * overriding {@code onRequestPermissionsResult} to forward them. Disabled by default.
+     * <p>
+     * System requests are then issued from a headless, retained fragment added to the host's
+     * Activity. It receives the result and passes it to {@link #onRequestPermissionsResult(int,
+     * String[], int[], Object...)} with the requesting host as the only receiver, even if that
+     * host was recreated in the meantime. Hosts that keep forwarding are not called twice, since
+     * results of routed requests no longer reach them.
+     * <p>
+     * The fragment is added when an Activity is created, or on the first request of an Activity
+     * created earlier. Requests made before it is attached, e.g. from that first request or from
+     * {@code Activity.onCreate()}, or after the Activity has saved its state, are issued by the
+     * host as before, so hosts that may make such requests should keep forwarding results.
+     */
+    public static void setResultRoutingEnabled(boolean enabled) {
+        PermissionResultRouter.setEnabled(enabled);
+    }
+
+    /**
+     * Get the {@link PermissionSession} of an Activity, which can be kept until the Activity is
+     * destroyed.
+     */
+    @NonNull
+    public static PermissionSession getSession(@NonNull Activity host) {
+        return new PermissionSession(PermissionHelper.getInstance(host));
+    }
+
+    /**
+     * @see #getSession(Activity)
+     */
+    @NonNull
+    public static PermissionSession getSession(@NonNull Fragment host) {
+        return new PermissionSession(PermissionHelper.getInstance(host));
+    }
+
+    /**
+     * @see #getSession(Activity)
+     */
+    @NonNull
+    public static PermissionSession getSession(@NonNull android.app.Fragment host) {
+        return new PermissionSession(PermissionHelper.getInstance(host));
+    }
+
     /**
      * 请求权限
      *
@@ -200,24 +583,18 @@ public class EasyPermissions {
      * @param requestCode
      * @param perms
      */
-    private static void requestPermissions(
+    static void requestPermissions(
             @NonNull PermissionHelper helper,
             @NonNull String rationale,
             @StringRes int positiveButton,
             @StringRes int negativeButton,
             int requestCode,
             @NonNull String... perms) {
-
-        // 如果所有权限都存在
-        // Check for permissions before dispatching the request
-        if (hasPermissions(helper.getContext(), perms)) {
-            notifyAlreadyHasPermissions(helper.getHost(), requestCode, perms);
-            return;
-        }
-        // 有未赋予的权限，则请求权限
-        // Request permissions
-        helper.requestPermissions(rationale, positiveButton,
-                negativeButton, requestCode, perms);
+        requestPermissions(new PermissionRequest.Builder(helper, requestCode, perms)
+                .setRationale(rationale)
+                .setPositiveButtonText(positiveButton)
+                .setNegativeButtonText(negativeButton)
+                .build());
     }
 
     /**
@@ -228,52 +605,175 @@ public class EasyPermissions {
      * String[], int[])} method.
      * <p>
      * If any permissions were granted or denied, the {@code object} will receive the appropriate
-     * callbacks through {@link PermissionCallbacks} and methods annotated with {@link
-     * AfterPermissionGranted} will be run if appropriate.
+     * callbacks through {@link PermissionCallbacks} or {@link PermissionSetCallbacks} and methods
+     * annotated with {@link AfterPermissionGranted} will be run if appropriate.
      *
      * @param requestCode  requestCode argument to permission result callback.
      * @param permissions  permissions argument to permission result callback.
      * @param grantResults grantResults argument to permission result callback.
      * @param receivers    an array of objects that have a method annotated with {@link
      *                     AfterPermissionGranted} or implement {@link PermissionCallbacks}.
+     *                     Ignored if receivers are registered for {@code requestCode}, see
+     *                     {@link #registerReceiver(int, Object)}.
      */
     public static void onRequestPermissionsResult(int requestCode,
                                                   @NonNull String[] permissions,
                                                   @NonNull int[] grantResults,
                                                   @NonNull Object... receivers) {
+        PermissionTrace.beginSection(PermissionTrace.ON_REQUEST_PERMISSIONS_RESULT);
+        try {
+            handleRequestPermissionsResult(requestCode, permissions, grantResults, receivers);
+        } finally {
+            PermissionTrace.endSection();
+        }
+    }
+
+    /**
+     * Register {@code receiver} for the results of {@code requestCode}. From then on, results of
+     * that request code are only delivered to its registered receivers, whatever receivers are
+     * passed to {@link #onRequestPermissionsResult(int, String[], int[], Object...)}.
+     * <p>
+     * Receivers are held weakly and the callbacks and {@link AfterPermissionGranted} methods they
+     * have are resolved once here instead of on every result.
+     *
+     * @param receiver an object that has a method annotated with {@link AfterPermissionGranted}
+     *                 or implements {@link PermissionCallbacks} or {@link
+     *                 PermissionSetCallbacks}.
+     */
+    @MainThread
+    public static void registerReceiver(int requestCode, @NonNull Object receiver) {
+        PermissionReceiverRegistry.register(requestCode, receiver);
+    }
+
+    /**
+     * Stop delivering results of {@code requestCode} to {@code receiver}.
+     */
+    @MainThread
+    public static void unregisterReceiver(int requestCode, @NonNull Object receiver) {
+        PermissionReceiverRegistry.unregister(requestCode, receiver);
+    }
 
-        // 分为两个数组，权限授予数组与权限未被授予数组
-        // Make a collection of granted and denied permissions from the request.
-        List<String> granted = new ArrayList<>();
-        List<String> denied = new ArrayList<>();
-        for (int i = 0; i < permissions.length; i++) {
-            String perm = permissions[i];
-            if (grantResults[i] == PackageManager.PERMISSION_GRANTED) {
-                granted.add(perm);
-            } else {
-                denied.add(perm);
+    /**
+     * Stop delivering results to {@code receiver}, for every request code it registered for.
+     */
+    @MainThread
+    public static void unregisterReceiver(@NonNull Object receiver) {
+        PermissionReceiverRegistry.unregister(receiver);
+    }
+
+    private static void handleRequestPermissionsResult(int requestCode,
+                                                       @NonNull String[] permissions,
+                                                       @NonNull int[] grantResults,
+                                                       @NonNull Object... receivers) {
+        // 记录权限授予情况
+        PermissionCache.onRequestPermissionsResult(permissions, grantResults);
+
+        // 当前请求已结束，排队中的下一个请求可以开始
+        PermissionRequestScheduler.onRequestPermissionsResult(requestCode);
+
+        // 合并请求的结果，拆分后分发给各个原始请求方
+        // Results of merged requests are split and re-delivered to every original host
+        if (PermissionRequestCoordinator.onRequestPermissionsResult(
+                requestCode, permissions, grantResults, receivers)) {
+            return;
+        }
+
+        // 记录请求历史，区分"从未请求"与"永久拒绝"
+        // Recorded once per original request, after merged results were split
+        PermissionHistory.onRequestPermissionsResult(permissions, grantResults);
+
+        // 分为权限授予与权限未被授予两部分，不复制数组
+        // View granted and denied permissions over the original arrays, without copying them.
+        PermissionResult result = PermissionResult.obtain(permissions, grantResults);
+        try {
+            PermissionMetrics.onRequestPermissionsResult(requestCode, result, receivers);
+
+            // 自动分配requestCode的请求，直接回调
+            // Requests with an allocated code only report to their callback
+            if (PendingCallbacks.deliver(requestCode, result)) {
+                return;
+            }
+
+            // 已为该requestCode注册的接收者优先，只分发给它们
+            // Receivers registered for this request code get the result instead of the ones
+            // passed in
+            PermissionReceiverRegistry.Receiver[] registered =
+                    PermissionReceiverRegistry.get(requestCode);
+            if (registered != null) {
+                for (PermissionReceiverRegistry.Receiver receiver : registered) {
+                    Object object = receiver.get();
+                    if (object != null) {
+                        dispatchResult(requestCode, result, object, receiver.mFlags);
+                        if (result.isAllGranted()
+                                && (receiver.mFlags
+                                & PermissionReceiverRegistry.FLAG_ANNOTATED_METHODS) != 0) {
+                            runAnnotatedMethods(object, requestCode, receiver.mDispatcher,
+                                    receiver.mMethods);
+                        }
+                    }
+                }
+                return;
+            }
+
+            // iterate through all receivers
+            for (Object object : receivers) {
+                dispatchResult(requestCode, result, object);
             }
+        } finally {
+            result.recycle();
         }
+    }
+
+    /**
+     * Deliver a permission result to a single receiver that did not register.
+     */
+    private static void dispatchResult(int requestCode,
+                                       @NonNull PermissionResult result,
+                                       @NonNull Object object) {
+        dispatchResult(requestCode, result, object,
+                PermissionReceiverRegistry.capabilitiesOf(object));
+        // 如果权限被全部授予，则回调AfterPermissionGranted注解方法
+        // If 100% successful, call annotated methods
+        if (result.isAllGranted()) {
+            runAnnotatedMethods(object, requestCode);
+        }
+    }
+
+    /**
+     * Deliver a permission result to the callback interfaces of a single receiver.
+     *
+     * @param flags the {@code PermissionReceiverRegistry.FLAG_*} callbacks of {@code object}.
+     */
+    private static void dispatchResult(int requestCode,
+                                       @NonNull PermissionResult result,
+                                       @NonNull Object object,
+                                       int flags) {
+        boolean callbacks = (flags & PermissionReceiverRegistry.FLAG_CALLBACKS) != 0;
+        boolean setCallbacks = (flags & PermissionReceiverRegistry.FLAG_SET_CALLBACKS) != 0;
+        // PermissionCallbacks may keep their lists while the pooled result is reused: they get
+        // copies, made once per result like the sets and shared by all receivers
         // 回调权限被授予
-        // iterate through all receivers
-        for (Object object : receivers) {
-            // Report granted permissions, if any.
-            if (!granted.isEmpty()) {
-                if (object instanceof PermissionCallbacks) {
-                    ((PermissionCallbacks) object).onPermissionsGranted(requestCode, granted);
-                }
+        // Report granted permissions, if any.
+        if (result.getGrantedCount() > 0) {
+            if (callbacks) {
+                ((PermissionCallbacks) object).onPermissionsGranted(requestCode,
+                        result.getGrantedCopy());
             }
-            // 回调权限被拒绝
-            // Report denied permissions, if any.
-            if (!denied.isEmpty()) {
-                if (object instanceof PermissionCallbacks) {
-                    ((PermissionCallbacks) object).onPermissionsDenied(requestCode, denied);
-                }
+            if (setCallbacks) {
+                ((PermissionSetCallbacks) object).onPermissionsGranted(requestCode,
+                        result.getGrantedSet());
+            }
+        }
+        // 回调权限被拒绝
+        // Report denied permissions, if any.
+        if (result.getDeniedCount() > 0) {
+            if (callbacks) {
+                ((PermissionCallbacks) object).onPermissionsDenied(requestCode,
+                        result.getDeniedCopy());
             }
-            // 如果权限被全部授予，则回调AfterPermissionGranted注解方法
-            // If 100% successful, call annotated methods
-            if (!granted.isEmpty() && denied.isEmpty()) {
-                runAnnotatedMethods(object, requestCode);
+            if (setCallbacks) {
+                ((PermissionSetCallbacks) object).onPermissionsDenied(requestCode,
+                        result.getDeniedSet());
             }
         }
     }
@@ -289,7 +789,7 @@ public class EasyPermissions {
      */
     public static boolean somePermissionPermanentlyDenied(@NonNull Activity host,
                                                           @NonNull List<String> deniedPermissions) {
-        return PermissionHelper.newInstance(host)
+        return PermissionHelper.getInstance(host)
                 .somePermissionPermanentlyDenied(deniedPermissions);
     }
 
@@ -298,7 +798,7 @@ public class EasyPermissions {
      */
     public static boolean somePermissionPermanentlyDenied(@NonNull Fragment host,
                                                           @NonNull List<String> deniedPermissions) {
-        return PermissionHelper.newInstance(host)
+        return PermissionHelper.getInstance(host)
                 .somePermissionPermanentlyDenied(deniedPermissions);
     }
 
@@ -307,12 +807,16 @@ public class EasyPermissions {
      */
     public static boolean somePermissionPermanentlyDenied(@NonNull android.app.Fragment host,
                                                           @NonNull List<String> deniedPermissions) {
-        return PermissionHelper.newInstance(host)
+        return PermissionHelper.getInstance(host)
                 .somePermissionPermanentlyDenied(deniedPermissions);
     }
 
     /**
      * Check if a permission has been permanently denied (user clicked "Never ask again").
+     * <p>
+     * The system reports a permission that was never requested the same way. Once {@link
+     * PermissionHistory#enable(Context)} has been called, such a permission is not reported as
+     * permanently denied.
      *
      * @param host             context requesting permissions.
      * @param deniedPermission denied permission.
@@ -320,7 +824,7 @@ public class EasyPermissions {
      */
     public static boolean permissionPermanentlyDenied(@NonNull Activity host,
                                                       @NonNull String deniedPermission) {
-        return PermissionHelper.newInstance(host).permissionPermanentlyDenied(deniedPermission);
+        return PermissionHelper.getInstance(host).permissionPermanentlyDenied(deniedPermission);
     }
 
     /**
@@ -328,7 +832,7 @@ public class EasyPermissions {
      */
     public static boolean permissionPermanentlyDenied(@NonNull Fragment host,
                                                       @NonNull String deniedPermission) {
-        return PermissionHelper.newInstance(host).permissionPermanentlyDenied(deniedPermission);
+        return PermissionHelper.getInstance(host).permissionPermanentlyDenied(deniedPermission);
     }
 
     /**
@@ -336,7 +840,7 @@ public class EasyPermissions {
      */
     public static boolean permissionPermanentlyDenied(@NonNull android.app.Fragment host,
                                                       @NonNull String deniedPermission) {
-        return PermissionHelper.newInstance(host).permissionPermanentlyDenied(deniedPermission);
+        return PermissionHelper.getInstance(host).permissionPermanentlyDenied(deniedPermission);
     }
 
     /**
@@ -349,7 +853,7 @@ public class EasyPermissions {
      */
     public static boolean somePermissionDenied(@NonNull Activity host,
                                                @NonNull String... perms) {
-        return PermissionHelper.newInstance(host).somePermissionDenied(perms);
+        return PermissionHelper.getInstance(host).somePermissionDenied(perms);
     }
 
     /**
@@ -357,7 +861,7 @@ public class EasyPermissions {
      */
     public static boolean somePermissionDenied(@NonNull Fragment host,
                                                @NonNull String... perms) {
-        return PermissionHelper.newInstance(host).somePermissionDenied(perms);
+        return PermissionHelper.getInstance(host).somePermissionDenied(perms);
     }
 
     /**
@@ -365,14 +869,14 @@ public class EasyPermissions {
      */
     public static boolean somePermissionDenied(@NonNull android.app.Fragment host,
                                                @NonNull String... perms) {
-        return PermissionHelper.newInstance(host).somePermissionDenied(perms);
+        return PermissionHelper.getInstance(host).somePermissionDenied(perms);
     }
 
     /**
      * 回调，权限全部被授予
      * <p>
-     * Run permission callbacks on an object that requested permissions but already has them by
-     * simulating {@link PackageManager#PERMISSION_GRANTED}.
+     * Run permission callbacks on an object that requested permissions but already has them,
+     * without going through {@link PackageManager#PERMISSION_GRANTED} grant results.
      *
      * @param object      the object requesting permissions.
      * @param requestCode the permission request code.
@@ -381,13 +885,35 @@ public class EasyPermissions {
     private static void notifyAlreadyHasPermissions(@NonNull Object object,
                                                     int requestCode,
                                                     @NonNull String[] perms) {
-        // 构造权限全部被授予的 int[] grantResults
+        PermissionResult result = PermissionResult.obtainAllGranted(perms);
+        try {
+            if (PendingCallbacks.deliver(requestCode, result)) {
+                return;
+            }
+            dispatchResult(requestCode, result, object);
+        } finally {
+            result.recycle();
+        }
+    }
+
+    /**
+     * Run permission callbacks on an object that requested permissions the system can't grant,
+     * without asking it.
+     */
+    private static void notifyDenied(@NonNull Object object,
+                                     int requestCode,
+                                     @NonNull String[] perms) {
         int[] grantResults = new int[perms.length];
-        for (int i = 0; i < perms.length; i++) {
-            grantResults[i] = PackageManager.PERMISSION_GRANTED;
+        Arrays.fill(grantResults, PackageManager.PERMISSION_DENIED);
+        PermissionResult result = PermissionResult.obtain(perms, grantResults);
+        try {
+            if (PendingCallbacks.deliver(requestCode, result)) {
+                return;
+            }
+            dispatchResult(requestCode, result, object);
+        } finally {
+            result.recycle();
         }
-        // 回调权限授予情况
-        onRequestPermissionsResult(requestCode, perms, grantResults, object);
     }
 
     /**
@@ -400,59 +926,49 @@ public class EasyPermissions {
      * @param requestCode the requestCode passed to the annotation.
      */
     private static void runAnnotatedMethods(@NonNull Object object, int requestCode) {
-        Class clazz = object.getClass();
-        if (isUsingAndroidAnnotations(object)) {
-            clazz = clazz.getSuperclass();
-        }
-
-        while (clazz != null) {
-            // 查找其对应的全部方法
-            for (Method method : clazz.getDeclaredMethods()) {
-                // 查找AfterPermissionGranted注解的方法
-                AfterPermissionGranted ann = method.getAnnotation(AfterPermissionGranted.class);
-                if (ann != null) {
-                    // Check for annotated methods with matching request code.
-                    // 对比注解中指定的value
-                    if (ann.value() == requestCode) {
-                        // 必须为无返回参数的方法
-                        // Method must be void so that we can invoke it
-                        if (method.getParameterTypes().length > 0) {
-                            throw new RuntimeException(
-                                    "Cannot execute method " + method.getName() + " because it is non-void method and/or has input parameters.");
-                        }
-                        //
-                        try {
-                            // Make method accessible if private
-                            if (!method.isAccessible()) {
-                                method.setAccessible(true);
-                            }
-                            // 调用该方法
-                            method.invoke(object);
-                        } catch (IllegalAccessException e) {
-                            Log.e(TAG, "runDefaultMethod:IllegalAccessException", e);
-                        } catch (InvocationTargetException e) {
-                            Log.e(TAG, "runDefaultMethod:InvocationTargetException", e);
-                        }
-                    }
-                }
-            }
+        // 优先使用编译期生成的 PermissionDispatcher，避免反射
+        // Prefer the dispatcher generated by easypermissions-compiler, if there is one
+        PermissionDispatcher<Object> dispatcher = PermissionDispatchers.find(object.getClass());
+        // 查找（并缓存）对应requestCode的AfterPermissionGranted注解方法
+        // Annotated methods are resolved once per class and cached by request code
+        Method[] methods = dispatcher != null
+                ? null
+                : AnnotatedMethodIndex.getMethods(object.getClass(), requestCode);
+        runAnnotatedMethods(object, requestCode, dispatcher, methods);
+    }
 
-            clazz = clazz.getSuperclass();
+    private static void runAnnotatedMethods(@NonNull Object object,
+                                            int requestCode,
+                                            @Nullable PermissionDispatcher<Object> dispatcher,
+                                            @Nullable Method[] methods) {
+        PermissionTrace.beginSection(PermissionTrace.RUN_ANNOTATED_METHODS);
+        try {
+            invokeAnnotatedMethods(object, requestCode, dispatcher, methods);
+        } finally {
+            PermissionTrace.endSection();
         }
     }
 
-    /**
-     * Determine if the project is using the AndroidAnnotations library.
-     */
-    private static boolean isUsingAndroidAnnotations(@NonNull Object object) {
-        if (!object.getClass().getSimpleName().endsWith("_")) {
-            return false;
+    private static void invokeAnnotatedMethods(@NonNull Object object,
+                                               int requestCode,
+                                               @Nullable PermissionDispatcher<Object> dispatcher,
+                                               @Nullable Method[] methods) {
+        if (dispatcher != null) {
+            dispatcher.dispatch(object, requestCode);
+            return;
         }
-        try {
-            Class clazz = Class.forName("org.androidannotations.api.view.HasViews");
-            return clazz.isInstance(object);
-        } catch (ClassNotFoundException e) {
-            return false;
+        if (methods == null) {
+            return;
+        }
+        for (Method method : methods) {
+            try {
+                // 调用该方法
+                method.invoke(object);
+            } catch (IllegalAccessException e) {
+                PermissionLog.e(TAG, "runDefaultMethod:IllegalAccessException", e);
+            } catch (InvocationTargetException e) {
+                PermissionLog.e(TAG, "runDefaultMethod:InvocationTargetException", e);
+            }
         }
     }
 }
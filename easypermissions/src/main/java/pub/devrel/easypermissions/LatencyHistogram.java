@@ -0,0 +1,80 @@
+package pub.devrel.easypermissions;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations over fixed buckets, cheap enough to record on the main thread.
+ * <p>
+ * Bucket {@code i} counts durations up to {@link #getBucketUpperBound(int)} milliseconds and above
+ * the bound of bucket {@code i - 1}. The last bucket is unbounded.
+ */
+public final class LatencyHistogram {
+
+    private static final long[] UPPER_BOUNDS_MS = {
+            16, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000, Long.MAX_VALUE
+    };
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(UPPER_BOUNDS_MS.length);
+
+    LatencyHistogram() {
+    }
+
+    void record(long millis) {
+        int bucket = 0;
+        while (millis > UPPER_BOUNDS_MS[bucket]) {
+            bucket++;
+        }
+        mCounts.incrementAndGet(bucket);
+    }
+
+    public int getBucketCount() {
+        return UPPER_BOUNDS_MS.length;
+    }
+
+    /**
+     * @return the inclusive upper bound of a bucket in milliseconds, {@link Long#MAX_VALUE} for the
+     * last one.
+     */
+    public long getBucketUpperBound(int bucket) {
+        return UPPER_BOUNDS_MS[bucket];
+    }
+
+    public long getCount(int bucket) {
+        return mCounts.get(bucket);
+    }
+
+    public long getTotalCount() {
+        long total = 0;
+        for (int i = 0; i < mCounts.length(); i++) {
+            total += mCounts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * @param percentile between 0 and 100.
+     * @return the upper bound of the bucket holding the given percentile, or 0 if nothing was
+     * recorded.
+     */
+    public long getPercentile(double percentile) {
+        long total = getTotalCount();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100d);
+        long seen = 0;
+        for (int i = 0; i < mCounts.length(); i++) {
+            seen += mCounts.get(i);
+            if (seen >= rank && seen > 0) {
+                return UPPER_BOUNDS_MS[i];
+            }
+        }
+        return UPPER_BOUNDS_MS[UPPER_BOUNDS_MS.length - 1];
+    }
+
+    public void reset() {
+        for (int i = 0; i < mCounts.length(); i++) {
+            mCounts.set(i, 0);
+        }
+    }
+}
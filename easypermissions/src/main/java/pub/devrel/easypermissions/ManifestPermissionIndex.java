@@ -0,0 +1,211 @@
+package pub.devrel.easypermissions;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.PermissionInfo;
+import android.os.AsyncTask;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Immutable index of the permissions declared in the app's manifest and their protection levels.
+ * <p>
+ * Built once per process, since neither the manifest nor the platform's permission definitions
+ * change while the app runs. Used by {@link EasyPermissions} to warn about permissions that are
+ * not declared before asking the system, and to skip the runtime check of normal permissions,
+ * which are granted at install time. The library builds it in the background on the first
+ * request, or during {@link EasyPermissions#prefetch}.
+ */
+public final class ManifestPermissionIndex {
+
+    /**
+     * Protection level of a permission that is not declared, or not defined by this platform
+     * version.
+     */
+    public static final int PROTECTION_UNKNOWN = -1;
+
+    private static final String TAG = "ManifestPermissionIndex";
+
+    private static volatile ManifestPermissionIndex sInstance;
+
+    private static final AtomicBoolean BUILD_STARTED = new AtomicBoolean();
+
+    private final PermissionSet mDeclared;
+    private final PermissionSet mDangerous;
+    private final PermissionSet mNormal;
+    private final Map<String, Integer> mProtectionLevels;
+
+    private ManifestPermissionIndex(@NonNull PermissionSet declared,
+                                    @NonNull PermissionSet dangerous,
+                                    @NonNull PermissionSet normal,
+                                    @NonNull Map<String, Integer> protectionLevels) {
+        mDeclared = declared;
+        mDangerous = dangerous;
+        mNormal = normal;
+        mProtectionLevels = protectionLevels;
+    }
+
+    /**
+     * Get the index, building it on first use. Building costs one package manager call per
+     * declared permission, so prefer calling this off the main thread the first time.
+     *
+     * @param context any context of the app.
+     */
+    @NonNull
+    public static ManifestPermissionIndex get(@NonNull Context context) {
+        ManifestPermissionIndex index = sInstance;
+        if (index == null) {
+            synchronized (ManifestPermissionIndex.class) {
+                index = sInstance;
+                if (index == null) {
+                    index = build(context);
+                    sInstance = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @return the index if it was already built, without building it.
+     */
+    @Nullable
+    static ManifestPermissionIndex peek() {
+        return sInstance;
+    }
+
+    /**
+     * @return the index if it was already built. Otherwise start building it, once, on {@link
+     * AsyncTask#THREAD_POOL_EXECUTOR} and return {@code null}.
+     */
+    @Nullable
+    static ManifestPermissionIndex peek(@NonNull Context context) {
+        ManifestPermissionIndex index = sInstance;
+        if (index != null || !BUILD_STARTED.compareAndSet(false, true)) {
+            return index;
+        }
+        final Context appContext = context.getApplicationContext();
+        // Shared pool rather than a thread of our own, this runs once per process
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    get(appContext);
+                } catch (RuntimeException e) {
+                    PermissionLog.w(TAG, "Unable to index manifest permissions", e);
+                }
+            }
+        });
+        return null;
+    }
+
+    @NonNull
+    private static ManifestPermissionIndex build(@NonNull Context context) {
+        PackageManager pm = context.getPackageManager();
+        PackageInfo info;
+        try {
+            info = pm.getPackageInfo(context.getPackageName(), PackageManager.GET_PERMISSIONS);
+        } catch (PackageManager.NameNotFoundException e) {
+            throw new IllegalStateException(
+                    "Can't find own package " + context.getPackageName(), e);
+        }
+
+        String[] perms = info.requestedPermissions;
+        if (perms == null) {
+            return new ManifestPermissionIndex(PermissionSet.EMPTY, PermissionSet.EMPTY,
+                    PermissionSet.EMPTY, Collections.<String, Integer>emptyMap());
+        }
+
+        Map<String, Integer> levels = new HashMap<>(perms.length * 2);
+        List<String> dangerous = new ArrayList<>();
+        List<String> normal = new ArrayList<>();
+        for (String perm : perms) {
+            int level = protectionLevelOf(pm, perm);
+            levels.put(perm, level);
+            if (level == PermissionInfo.PROTECTION_DANGEROUS) {
+                dangerous.add(perm);
+            } else if (level == PermissionInfo.PROTECTION_NORMAL) {
+                normal.add(perm);
+            }
+        }
+        return new ManifestPermissionIndex(PermissionSet.of(perms), PermissionSet.of(dangerous),
+                PermissionSet.of(normal), Collections.unmodifiableMap(levels));
+    }
+
+    private static int protectionLevelOf(@NonNull PackageManager pm, @NonNull String perm) {
+        try {
+            PermissionInfo permissionInfo = pm.getPermissionInfo(perm, 0);
+            return permissionInfo.protectionLevel & PermissionInfo.PROTECTION_MASK_BASE;
+        } catch (PackageManager.NameNotFoundException e) {
+            // Declared, but defined by a newer platform or another app that is not installed
+            return PROTECTION_UNKNOWN;
+        }
+    }
+
+    /**
+     * @return {@code true} if {@code perm} is declared with {@code <uses-permission>}.
+     */
+    public boolean isDeclared(@NonNull String perm) {
+        return mDeclared.contains(perm);
+    }
+
+    /**
+     * @return {@code true} if {@code perm} is declared and has to be granted at runtime.
+     */
+    public boolean isDangerous(@NonNull String perm) {
+        return mDangerous.contains(perm);
+    }
+
+    /**
+     * @return {@code true} if {@code perm} is declared and granted at install time.
+     */
+    public boolean isNormal(@NonNull String perm) {
+        return mNormal.contains(perm);
+    }
+
+    /**
+     * @return the base protection level of {@code perm}, such as {@link
+     * PermissionInfo#PROTECTION_DANGEROUS}, or {@link #PROTECTION_UNKNOWN}.
+     */
+    public int getProtectionLevel(@NonNull String perm) {
+        Integer level = mProtectionLevels.get(perm);
+        return level != null ? level : PROTECTION_UNKNOWN;
+    }
+
+    @NonNull
+    public PermissionSet getDeclaredPermissions() {
+        return mDeclared;
+    }
+
+    @NonNull
+    public PermissionSet getDangerousPermissions() {
+        return mDangerous;
+    }
+
+    /**
+     * @return the {@code perms} that are not declared in the manifest, and that the system will
+     * deny without asking. This includes permissions declared with a {@code maxSdkVersion} below
+     * the platform version.
+     */
+    @NonNull
+    List<String> getUndeclared(@NonNull String... perms) {
+        List<String> undeclared = null;
+        for (String perm : perms) {
+            if (!isDeclared(perm)) {
+                if (undeclared == null) {
+                    undeclared = new ArrayList<>(perms.length);
+                }
+                undeclared.add(perm);
+            }
+        }
+        return undeclared != null ? undeclared : Collections.<String>emptyList();
+    }
+}
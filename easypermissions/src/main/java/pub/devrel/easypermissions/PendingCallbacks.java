@@ -0,0 +1,297 @@
+package pub.devrel.easypermissions;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.os.Bundle;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.support.v4.app.Fragment;
+import android.util.SparseArray;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+
+/**
+ * {@link PermissionResultCallback}s of requests in flight, by the request code allocated to them.
+ * <p>
+ * Codes are taken from {@link #FIRST_REQUEST_CODE} to {@link #LAST_REQUEST_CODE} (0xC0 to
+ * 0xFF), below 256 so that they are valid for Fragments too, and tracked in a single {@code
+ * long}. These codes are reserved: a result with one of them is taken for a callback's, so hosts
+ * must not use them for their own requests. A code is free again, and its callback released, as
+ * soon as the result is delivered.
+ * <p>
+ * Hosts are held weakly. The callback of a Fragment that is no longer added, or that was
+ * garbage collected, is released without being called when its result arrives, and whenever a
+ * code is allocated or an Activity is destroyed.
+ * <p>
+ * When the Activity of a request is destroyed, its callback is released. If the Activity is only
+ * being recreated, the result will still arrive at the new instance, so the code is abandoned
+ * instead of freed: its result is swallowed rather than reaching the callbacks of the new host,
+ * and the code is freed when that result arrives. Abandoned codes are reclaimed if every code is
+ * in use.
+ */
+@MainThread
+final class PendingCallbacks {
+
+    static final int FIRST_REQUEST_CODE = 0xC0;
+    static final int LAST_REQUEST_CODE = 0xFF;
+
+    private static final String TAG = "PendingCallbacks";
+
+    private static final SparseArray<Pending> PENDING = new SparseArray<>();
+
+    /**
+     * Bit {@code i} is set while {@code FIRST_REQUEST_CODE + i} is in use.
+     */
+    private static long sInUse;
+    /**
+     * Bit {@code i} is set while {@code FIRST_REQUEST_CODE + i} waits for a result to swallow.
+     */
+    private static long sAbandoned;
+
+    private static boolean sCallbacksRegistered;
+
+    private PendingCallbacks() {
+    }
+
+    /**
+     * Free every code and forget the registered lifecycle callbacks, e.g. between tests that each
+     * get a new {@code Application}.
+     */
+    @VisibleForTesting
+    static void reset() {
+        PENDING.clear();
+        sInUse = 0L;
+        sAbandoned = 0L;
+        sCallbacksRegistered = false;
+    }
+
+    /**
+     * Allocate a request code for {@code callback}.
+     *
+     * @param host    the requesting Activity or Fragment, the callback is dropped once it is gone.
+     * @param context the context of {@code host}, its destruction drops the callback.
+     * @throws IllegalStateException if every code is in use.
+     */
+    static int register(@NonNull Object host,
+                        @Nullable Context context,
+                        @NonNull PermissionResultCallback callback) {
+        releaseGone();
+        if (sInUse == -1L && sAbandoned != 0L) {
+            // Results that never came, e.g. the recreated Activity was finished before
+            sInUse &= ~sAbandoned;
+            sAbandoned = 0L;
+        }
+        if (sInUse == -1L) {
+            throw new IllegalStateException("Too many permission requests in flight, at most "
+                    + (LAST_REQUEST_CODE - FIRST_REQUEST_CODE + 1) + " can wait for a result");
+        }
+        int index = Long.numberOfTrailingZeros(~sInUse);
+        sInUse |= 1L << index;
+
+        if (context instanceof Activity) {
+            registerCallbacks((Activity) context);
+        }
+        int requestCode = FIRST_REQUEST_CODE + index;
+        PENDING.put(requestCode, new Pending(callback, host, context));
+        return requestCode;
+    }
+
+    /**
+     * Free {@code requestCode} without calling its callback.
+     */
+    static void cancel(int requestCode) {
+        release(requestCode);
+    }
+
+    /**
+     * Deliver {@code result} to the callback waiting for {@code requestCode}, if there is one.
+     *
+     * @return {@code true} if the result was delivered, or swallowed because the code was
+     * abandoned or its host is gone.
+     */
+    static boolean deliver(int requestCode, @NonNull PermissionResult result) {
+        if (releaseAbandoned(requestCode)) {
+            return true;
+        }
+        Pending pending = release(requestCode);
+        if (pending == null) {
+            return false;
+        }
+        if (pending.isHostGone()) {
+            PermissionLog.d(TAG, "Dropping result of request " + requestCode
+                    + ", its Fragment is no longer added");
+            return true;
+        }
+        pending.mCallback.onPermissionResult(result);
+        return true;
+    }
+
+    /**
+     * Deliver a result with all {@code perms} denied, after the user declined the rationale.
+     *
+     * @return {@code true} if the result was delivered, or swallowed because the code was
+     * abandoned.
+     */
+    static boolean deliverDenied(int requestCode, @NonNull String[] perms) {
+        if (releaseAbandoned(requestCode)) {
+            return true;
+        }
+        if (PENDING.get(requestCode) == null) {
+            return false;
+        }
+        int[] grantResults = new int[perms.length];
+        Arrays.fill(grantResults, PackageManager.PERMISSION_DENIED);
+        PermissionResult result = PermissionResult.obtain(perms, grantResults);
+        try {
+            return deliver(requestCode, result);
+        } finally {
+            result.recycle();
+        }
+    }
+
+    @Nullable
+    private static Pending release(int requestCode) {
+        if (requestCode < FIRST_REQUEST_CODE || requestCode > LAST_REQUEST_CODE) {
+            return null;
+        }
+        Pending pending = PENDING.get(requestCode);
+        if (pending != null) {
+            PENDING.remove(requestCode);
+            sInUse &= ~(1L << (requestCode - FIRST_REQUEST_CODE));
+        }
+        return pending;
+    }
+
+    /**
+     * Drop the callback of {@code requestCode} but keep the code in use until its result arrives.
+     */
+    private static void abandon(int requestCode) {
+        if (release(requestCode) != null) {
+            long bit = 1L << (requestCode - FIRST_REQUEST_CODE);
+            sInUse |= bit;
+            sAbandoned |= bit;
+        }
+    }
+
+    /**
+     * Release the callbacks of hosts that are gone, e.g. removed Fragments, which usually hold a
+     * reference to them.
+     */
+    private static void releaseGone() {
+        for (int i = PENDING.size() - 1; i >= 0; i--) {
+            if (PENDING.valueAt(i).isHostGone()) {
+                release(PENDING.keyAt(i));
+            }
+        }
+    }
+
+    /**
+     * @return {@code true} if {@code requestCode} was abandoned, it is free now.
+     */
+    private static boolean releaseAbandoned(int requestCode) {
+        if (requestCode < FIRST_REQUEST_CODE || requestCode > LAST_REQUEST_CODE) {
+            return false;
+        }
+        long bit = 1L << (requestCode - FIRST_REQUEST_CODE);
+        if ((sAbandoned & bit) == 0L) {
+            return false;
+        }
+        sAbandoned &= ~bit;
+        sInUse &= ~bit;
+        PermissionLog.d(TAG, "Dropping result of request " + requestCode
+                + ", its Activity was recreated");
+        return true;
+    }
+
+    private static void registerCallbacks(@NonNull Activity activity) {
+        if (sCallbacksRegistered) {
+            return;
+        }
+        activity.getApplication().registerActivityLifecycleCallbacks(new ReleasingCallbacks());
+        sCallbacksRegistered = true;
+    }
+
+    /**
+     * A callback and the host that is waiting for it.
+     */
+    private static class Pending {
+
+        final PermissionResultCallback mCallback;
+        final WeakReference<Object> mHost;
+        final WeakReference<Context> mContext;
+
+        Pending(@NonNull PermissionResultCallback callback,
+                @NonNull Object host,
+                @Nullable Context context) {
+            mCallback = callback;
+            mHost = new WeakReference<>(host);
+            mContext = new WeakReference<>(context);
+        }
+
+        /**
+         * @return {@code true} if the host was garbage collected, or is a Fragment that is no
+         * longer added. Activities are released when they are destroyed instead.
+         */
+        boolean isHostGone() {
+            Object host = mHost.get();
+            if (host instanceof Fragment) {
+                return !((Fragment) host).isAdded();
+            }
+            if (host instanceof android.app.Fragment) {
+                return !((android.app.Fragment) host).isAdded();
+            }
+            return host == null;
+        }
+    }
+
+    /**
+     * Drops the callbacks of destroyed Activities, which usually hold a reference to them.
+     */
+    private static class ReleasingCallbacks implements Application.ActivityLifecycleCallbacks {
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+            // Not finishing: recreated for a configuration change or after being destroyed in
+            // the background, the result is delivered to the new instance
+            boolean recreating = activity.isChangingConfigurations() || !activity.isFinishing();
+            for (int i = PENDING.size() - 1; i >= 0; i--) {
+                Context context = PENDING.valueAt(i).mContext.get();
+                if (context == activity && recreating) {
+                    abandon(PENDING.keyAt(i));
+                } else if (context == null || context == activity) {
+                    release(PENDING.keyAt(i));
+                }
+            }
+            releaseGone();
+        }
+
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityStarted(Activity activity) {
+        }
+
+        @Override
+        public void onActivityResumed(Activity activity) {
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package pub.devrel.easypermissions;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.v4.content.ContextCompat;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Opt-in, in-process cache of permission grant states used by {@link
+ * EasyPermissions#hasPermissions(Context, String...)}. Safe to use from any thread.
+ * <p>
+ * The cache is filled by permission checks and by the results passed to {@link
+ * EasyPermissions#onRequestPermissionsResult(int, String[], int[], Object...)}. It is cleared when
+ * the user returns from the {@link AppSettingsDialog} and whenever an Activity resumes after the
+ * app was (at least partly) stopped, since permissions can only change outside of the app.
+ */
+public final class PermissionCache {
+
+    private static final ConcurrentMap<String, Boolean> STATES = new ConcurrentHashMap<>();
+
+    private static final AtomicLong HITS = new AtomicLong();
+    private static final AtomicLong MISSES = new AtomicLong();
+
+    /**
+     * Bumped on every invalidation, so that a check that was running on another thread while the
+     * cache was cleared does not store a state that may already be outdated.
+     */
+    private static final AtomicInteger GENERATION = new AtomicInteger();
+
+    private static final Application.ActivityLifecycleCallbacks LIFECYCLE_CALLBACKS =
+            new InvalidatingCallbacks();
+
+    private static volatile boolean sEnabled;
+    private static Application sApplication;
+
+    private PermissionCache() {
+    }
+
+    /**
+     * Start caching permission grant states. Usually called from {@code Application.onCreate()}.
+     *
+     * @param context any context of the app, used to observe Activity lifecycles.
+     */
+    public static synchronized void enable(@NonNull Context context) {
+        if (sEnabled) {
+            return;
+        }
+        Context appContext = context.getApplicationContext();
+        if (appContext instanceof Application) {
+            sApplication = (Application) appContext;
+            sApplication.registerActivityLifecycleCallbacks(LIFECYCLE_CALLBACKS);
+        }
+        sEnabled = true;
+    }
+
+    /**
+     * Stop caching and drop every cached state.
+     */
+    public static synchronized void disable() {
+        if (sApplication != null) {
+            sApplication.unregisterActivityLifecycleCallbacks(LIFECYCLE_CALLBACKS);
+            sApplication = null;
+        }
+        sEnabled = false;
+        invalidate();
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * Drop every cached state, the next checks go to the system again.
+     */
+    public static void invalidate() {
+        GENERATION.incrementAndGet();
+        STATES.clear();
+    }
+
+    /**
+     * Number of permission checks answered from the cache.
+     */
+    public static long getHitCount() {
+        return HITS.get();
+    }
+
+    /**
+     * Number of permission checks that had to ask the system while the cache was enabled.
+     */
+    public static long getMissCount() {
+        return MISSES.get();
+    }
+
+    public static void resetCounters() {
+        HITS.set(0);
+        MISSES.set(0);
+    }
+
+    /**
+     * Enable the cache and fill it on {@code executor} with the grant state of every dangerous
+     * permission declared in the manifest, using a single {@link PermissionSnapshot}.
+     * <p>
+     * Checks made before the prefetch completes ask the system as usual. States recorded while
+     * the prefetch was running are kept, and nothing is stored if the cache was invalidated in
+     * the meantime.
+     */
+    @NonNull
+    static Future<PermissionSnapshot> prefetch(@NonNull Context context,
+                                               @NonNull Executor executor) {
+        enable(context);
+
+        final Context appContext = context.getApplicationContext();
+        final int generation = GENERATION.get();
+        FutureTask<PermissionSnapshot> task = new FutureTask<>(
+                new Callable<PermissionSnapshot>() {
+                    @Override
+                    public PermissionSnapshot call() {
+                        ManifestPermissionIndex index = ManifestPermissionIndex.get(appContext);
+                        PermissionSnapshot snapshot = PermissionSnapshot.capture(appContext);
+                        seed(index.getDangerousPermissions(), snapshot, generation);
+                        return snapshot;
+                    }
+                });
+        executor.execute(task);
+        return task;
+    }
+
+    private static void seed(@NonNull PermissionSet perms,
+                             @NonNull PermissionSnapshot snapshot,
+                             int generation) {
+        for (String perm : perms) {
+            if (!sEnabled || generation != GENERATION.get()) {
+                return;
+            }
+            STATES.putIfAbsent(perm, snapshot.isGranted(perm));
+        }
+    }
+
+    /**
+     * Check a single permission, answering from the cache when possible.
+     */
+    static boolean isGranted(@NonNull Context context, @NonNull String perm) {
+        if (!sEnabled) {
+            return checkSelfPermission(context, perm);
+        }
+
+        Boolean cached = STATES.get(perm);
+        if (cached != null) {
+            HITS.incrementAndGet();
+            return cached;
+        }
+
+        MISSES.incrementAndGet();
+        int generation = GENERATION.get();
+        boolean granted = checkSelfPermission(context, perm);
+        if (generation == GENERATION.get()) {
+            STATES.put(perm, granted);
+        }
+        return granted;
+    }
+
+    /**
+     * Record the outcome of a permission request.
+     */
+    static void onRequestPermissionsResult(@NonNull String[] permissions,
+                                           @NonNull int[] grantResults) {
+        if (!sEnabled) {
+            return;
+        }
+        for (int i = 0; i < permissions.length; i++) {
+            STATES.put(permissions[i], grantResults[i] == PackageManager.PERMISSION_GRANTED);
+        }
+    }
+
+    private static boolean checkSelfPermission(@NonNull Context context, @NonNull String perm) {
+        PermissionMetrics.onPermissionCheck();
+        return ContextCompat.checkSelfPermission(context, perm)
+                == PackageManager.PERMISSION_GRANTED;
+    }
+
+    /**
+     * Invalidates the cache when an Activity resumes after something in the app was stopped,
+     * e.g. when coming back from the system settings. Returning from the permission dialog only
+     * pauses the host, and its results are already recorded.
+     */
+    private static class InvalidatingCallbacks implements Application.ActivityLifecycleCallbacks {
+
+        private volatile boolean mStoppedSinceResume;
+
+        @Override
+        public void onActivityResumed(Activity activity) {
+            if (mStoppedSinceResume) {
+                mStoppedSinceResume = false;
+                invalidate();
+            }
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+            mStoppedSinceResume = true;
+        }
+
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityStarted(Activity activity) {
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+        }
+    }
+}
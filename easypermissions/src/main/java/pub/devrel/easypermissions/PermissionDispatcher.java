@@ -0,0 +1,57 @@
+/*
+ * Copyright Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pub.devrel.easypermissions;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.RestrictTo;
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Runs the {@link AfterPermissionGranted} methods of a host class without reflection.
+ * <p>
+ * Implementations are generated by the {@code easypermissions-compiler} annotation processor as
+ * {@code <Host>_PermissionDispatcher} and should not be written by hand.
+ *
+ * @param <T> the host class declaring the annotated methods.
+ */
+public interface PermissionDispatcher<T> {
+
+    /**
+     * Invoke every method of {@code target} annotated with {@link AfterPermissionGranted} whose
+     * value is {@code requestCode}.
+     */
+    void dispatch(@NonNull T target, int requestCode);
+
+    /**
+     * Called by generated dispatchers when an annotated method throws, so that the failure is
+     * logged the same way as when the method is invoked with reflection.
+     */
+    @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+    final class Failures {
+
+        private static final String TAG = "EasyPermissions";
+
+        private Failures() {
+        }
+
+        public static void report(@NonNull Throwable e) {
+            PermissionLog.e(TAG, "runDefaultMethod:InvocationTargetException",
+                    new InvocationTargetException(e));
+        }
+    }
+
+}
@@ -0,0 +1,85 @@
+package pub.devrel.easypermissions;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Finds the {@link PermissionDispatcher} generated for a receiver class, if any.
+ * <p>
+ * The lookup is done once per receiver class and cached, so dispatching to a class with generated
+ * code never touches reflection again.
+ */
+final class PermissionDispatchers {
+
+    private static final String SUFFIX = "_PermissionDispatcher";
+
+    /**
+     * Cached marker for classes that have to fall back to reflection.
+     */
+    private static final PermissionDispatcher<Object> NO_DISPATCHER =
+            new PermissionDispatcher<Object>() {
+                @Override
+                public void dispatch(@NonNull Object target, int requestCode) {
+                }
+            };
+
+    private static final ConcurrentMap<Class<?>, PermissionDispatcher<Object>> DISPATCHERS =
+            new ConcurrentHashMap<>();
+
+    private PermissionDispatchers() {
+    }
+
+    /**
+     * Get the generated dispatcher covering {@code clazz}, or {@code null} if annotated methods of
+     * {@code clazz} have to be found with reflection.
+     */
+    @Nullable
+    static PermissionDispatcher<Object> find(@NonNull Class<?> clazz) {
+        PermissionDispatcher<Object> dispatcher = DISPATCHERS.get(clazz);
+        if (dispatcher == null) {
+            dispatcher = resolve(clazz);
+            DISPATCHERS.putIfAbsent(clazz, dispatcher);
+        }
+        return dispatcher == NO_DISPATCHER ? null : dispatcher;
+    }
+
+    /**
+     * Walk up from {@code clazz} to the nearest class with a generated dispatcher. Subclasses
+     * without generated code (such as the {@code MyActivity_} classes of AndroidAnnotations) are
+     * skipped as long as they do not declare annotated methods themselves.
+     */
+    @SuppressWarnings("unchecked")
+    @NonNull
+    private static PermissionDispatcher<Object> resolve(@NonNull Class<?> clazz) {
+        for (Class<?> c = clazz;
+             c != null && !AnnotatedMethodIndex.isFrameworkClass(c);
+             c = c.getSuperclass()) {
+            try {
+                Class<?> generated = Class.forName(c.getName() + SUFFIX, true, c.getClassLoader());
+                return (PermissionDispatcher<Object>) generated.newInstance();
+            } catch (ClassNotFoundException e) {
+                // No generated code for this class, keep walking
+            } catch (InstantiationException | IllegalAccessException e) {
+                throw new RuntimeException("Unable to create dispatcher for " + c.getName(), e);
+            }
+
+            if (declaresAnnotatedMethods(c)) {
+                return NO_DISPATCHER;
+            }
+        }
+        return NO_DISPATCHER;
+    }
+
+    private static boolean declaresAnnotatedMethods(@NonNull Class<?> clazz) {
+        for (Method method : clazz.getDeclaredMethods()) {
+            if (method.isAnnotationPresent(AfterPermissionGranted.class)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
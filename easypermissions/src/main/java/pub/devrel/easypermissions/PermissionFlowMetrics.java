@@ -0,0 +1,197 @@
+package pub.devrel.easypermissions;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.List;
+
+import pub.devrel.easypermissions.helper.PermissionHelper;
+
+/**
+ * Record of a single permission request flow, passed to {@link PermissionMetricsListener}.
+ * <p>
+ * Check counts are approximate: they are the number of {@code checkSelfPermission} and {@code
+ * shouldShowRequestPermissionRationale} calls the library made, on any thread, between the start
+ * and the end of the flow, including calls made for other flows running at the same time.
+ */
+public final class PermissionFlowMetrics {
+
+    private final int mRequestCode;
+    private final String[] mPermissions;
+    private final long mStartedAt;
+    private final int mChecksAtStart;
+    private final int mRationaleQueriesAtStart;
+
+    /**
+     * The Activity of the request, a flow is identified by it and its request code.
+     */
+    private final WeakReference<Context> mContext;
+
+    /**
+     * Only used to tell whether denied permissions are permanently denied, the host is weakly
+     * held by the helper.
+     */
+    private final PermissionHelper mHelper;
+
+    private long mDurationMillis;
+    private boolean mRationaleShown;
+    private long mRationaleShownAt;
+    private long mRationaleMillis;
+    private boolean mRationaleAccepted;
+    private int mGrantedCount;
+    private int mDeniedCount;
+    @Nullable
+    private String[] mDenied;
+    @Nullable
+    private Boolean mPermanentlyDenied;
+    private int mCheckCount;
+    private int mRationaleQueryCount;
+
+    PermissionFlowMetrics(@NonNull PermissionHelper helper,
+                          int requestCode,
+                          @NonNull String[] permissions,
+                          int checks,
+                          int rationaleQueries) {
+        mHelper = helper;
+        mContext = new WeakReference<>(helper.getContext());
+        mRequestCode = requestCode;
+        mPermissions = permissions.clone();
+        mStartedAt = SystemClock.uptimeMillis();
+        mChecksAtStart = checks;
+        mRationaleQueriesAtStart = rationaleQueries;
+    }
+
+    @Nullable
+    Context getContext() {
+        return mContext.get();
+    }
+
+    void onRationaleShown() {
+        mRationaleShown = true;
+        mRationaleShownAt = SystemClock.uptimeMillis();
+    }
+
+    void onRationaleAnswered(boolean accepted) {
+        mRationaleAccepted = accepted;
+        mRationaleMillis = SystemClock.uptimeMillis() - mRationaleShownAt;
+    }
+
+    void finish(int grantedCount, int deniedCount, int checks, int rationaleQueries) {
+        mDurationMillis = SystemClock.uptimeMillis() - mStartedAt;
+        mGrantedCount = grantedCount;
+        mDeniedCount = deniedCount;
+        mCheckCount = checks - mChecksAtStart;
+        mRationaleQueryCount = rationaleQueries - mRationaleQueriesAtStart;
+    }
+
+    /**
+     * @param denied the permissions the system denied, checked for permanent denial only if
+     *               {@link #isPermanentlyDenied()} is called.
+     */
+    void setDenied(@NonNull List<String> denied) {
+        mDenied = denied.toArray(new String[denied.size()]);
+    }
+
+    public int getRequestCode() {
+        return mRequestCode;
+    }
+
+    @NonNull
+    public String[] getPermissions() {
+        return mPermissions.clone();
+    }
+
+    /**
+     * @return the time from {@code requestPermissions} to the result, rationale included.
+     */
+    public long getDurationMillis() {
+        return mDurationMillis;
+    }
+
+    public boolean isRationaleShown() {
+        return mRationaleShown;
+    }
+
+    /**
+     * @return the time the rationale dialog was showing, 0 if it was not shown.
+     */
+    public long getRationaleMillis() {
+        return mRationaleMillis;
+    }
+
+    /**
+     * @return {@code true} if the rationale was shown and the user chose to continue.
+     */
+    public boolean isRationaleAccepted() {
+        return mRationaleAccepted;
+    }
+
+    public int getGrantedCount() {
+        return mGrantedCount;
+    }
+
+    public int getDeniedCount() {
+        return mDeniedCount;
+    }
+
+    /**
+     * Asks the system on the first call, so only call this if the answer is needed. Always
+     * {@code false} once the host of the request no longer exists.
+     *
+     * @return {@code true} if at least one denied permission can no longer be requested.
+     */
+    @MainThread
+    public boolean isPermanentlyDenied() {
+        if (mPermanentlyDenied == null) {
+            mPermanentlyDenied = checkPermanentlyDenied();
+        }
+        return mPermanentlyDenied;
+    }
+
+    private boolean checkPermanentlyDenied() {
+        if (mDenied == null) {
+            return false;
+        }
+        // Same as PermissionHelper#permissionPermanentlyDenied, without counting the queries,
+        // which are not part of the flow
+        try {
+            for (String perm : mDenied) {
+                if (!mHelper.shouldShowRequestPermissionRationale(perm)
+                        && !PermissionHistory.wasNeverAsked(perm)) {
+                    return true;
+                }
+            }
+        } catch (IllegalStateException e) {
+            // The host was garbage collected
+        }
+        return false;
+    }
+
+    public int getPermissionCheckCount() {
+        return mCheckCount;
+    }
+
+    public int getRationaleQueryCount() {
+        return mRationaleQueryCount;
+    }
+
+    @Override
+    public String toString() {
+        return "PermissionFlowMetrics{"
+                + "mRequestCode=" + mRequestCode
+                + ", mPermissions=" + Arrays.toString(mPermissions)
+                + ", mDurationMillis=" + mDurationMillis
+                + ", mRationaleShown=" + mRationaleShown
+                + ", mRationaleMillis=" + mRationaleMillis
+                + ", mGrantedCount=" + mGrantedCount
+                + ", mDeniedCount=" + mDeniedCount
+                + ", mCheckCount=" + mCheckCount
+                + ", mRationaleQueryCount=" + mRationaleQueryCount
+                + '}';
+    }
+}
@@ -0,0 +1,445 @@
+package pub.devrel.easypermissions;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Persistent record of how often each permission was requested and how the user answered, used
+ * to tell a permission that was never requested from one that is permanently denied: the system
+ * reports both the same way through {@code shouldShowRequestPermissionRationale}.
+ * <p>
+ * The history lives in a memory-mapped file with a fixed layout: a 16 byte header (magic,
+ * version, record count) followed by one {@value #RECORD_SIZE} byte record per permission:
+ * <pre>
+ *   0  short  name length in bytes
+ *   2  byte[] UTF-8 name, at most {@value #MAX_NAME_BYTES} bytes
+ *  98  byte   last result, see {@link #RESULT_UNKNOWN}
+ * 100  int    ask count
+ * 104  long   first asked, epoch millis
+ * 112  long   last asked, epoch millis
+ * 120  long   last granted, epoch millis
+ * </pre>
+ * Queries read an in-memory copy and never touch the file. A result updates that copy on the
+ * thread that delivers it, so the callbacks of the result already see it. The file is loaded once
+ * and each updated record is then written in place, both on a background thread. Results recorded
+ * before the file is loaded are added to the loaded records.
+ */
+public final class PermissionHistory {
+
+    /**
+     * No result was recorded for the permission.
+     */
+    public static final int RESULT_UNKNOWN = 0;
+    public static final int RESULT_GRANTED = 1;
+    public static final int RESULT_DENIED = 2;
+
+    static final int RECORD_SIZE = 128;
+    static final int MAX_NAME_BYTES = 96;
+
+    private static final String TAG = "PermissionHistory";
+    private static final String FILE_NAME = "easypermissions_history.bin";
+
+    private static final int MAGIC = 0x45504831; // "EPH1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int OFFSET_COUNT = 8;
+    private static final int GROW_RECORDS = 16;
+
+    private static final int OFFSET_NAME = 2;
+    private static final int OFFSET_LAST_RESULT = 98;
+    private static final int OFFSET_ASK_COUNT = 100;
+    private static final int OFFSET_FIRST_ASKED = 104;
+    private static final int OFFSET_LAST_ASKED = 112;
+    private static final int OFFSET_LAST_GRANTED = 120;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final ConcurrentMap<String, Record> RECORDS = new ConcurrentHashMap<>();
+    /**
+     * Index of the record of each permission in the file, only accessed on the executor thread.
+     */
+    private static final Map<String, Integer> INDEXES = new HashMap<>();
+
+    private static volatile boolean sEnabled;
+    private static volatile boolean sLoaded;
+
+    @Nullable
+    private static volatile ExecutorService sExecutor;
+
+    // Only accessed on the executor thread
+    @Nullable
+    private static FileChannel sChannel;
+    @Nullable
+    private static MappedByteBuffer sBuffer;
+    private static int sRecordCount;
+
+    private PermissionHistory() {
+    }
+
+    /**
+     * Start recording permission results, and load the existing history in the background.
+     * Usually called from {@code Application.onCreate()}.
+     * <p>
+     * Permissions requested before the history was enabled are reported as never asked until
+     * their next result is recorded.
+     */
+    public static synchronized void enable(@NonNull Context context) {
+        if (sEnabled) {
+            return;
+        }
+        sEnabled = true;
+
+        final File file = new File(getDirectory(context.getApplicationContext()), FILE_NAME);
+        sExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable r) {
+                Thread thread = new Thread(r, TAG);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // Without the file nothing is known about earlier requests
+                sLoaded = load(file);
+            }
+        });
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * @return {@code true} once the history is loaded and {@code perm} has never been part of a
+     * request whose result was recorded. {@code false} if it was, or if this is not known yet.
+     */
+    public static boolean wasNeverAsked(@NonNull String perm) {
+        return sLoaded && getAskCount(perm) == 0;
+    }
+
+    /**
+     * @return the number of requests of {@code perm} whose result was recorded.
+     */
+    public static int getAskCount(@NonNull String perm) {
+        Record record = RECORDS.get(perm);
+        return record != null ? record.mAskCount : 0;
+    }
+
+    /**
+     * @return {@link #RESULT_GRANTED}, {@link #RESULT_DENIED} or {@link #RESULT_UNKNOWN}.
+     */
+    public static int getLastResult(@NonNull String perm) {
+        Record record = RECORDS.get(perm);
+        return record != null ? record.mLastResult : RESULT_UNKNOWN;
+    }
+
+    /**
+     * @return when {@code perm} was first requested, in epoch millis, or {@code 0}.
+     */
+    public static long getFirstAskedMillis(@NonNull String perm) {
+        Record record = RECORDS.get(perm);
+        return record != null ? record.mFirstAsked : 0;
+    }
+
+    /**
+     * @return when the result of the last request of {@code perm} arrived, in epoch millis, or
+     * {@code 0}.
+     */
+    public static long getLastAskedMillis(@NonNull String perm) {
+        Record record = RECORDS.get(perm);
+        return record != null ? record.mLastAsked : 0;
+    }
+
+    /**
+     * @return when {@code perm} was last granted by a request, in epoch millis, or {@code 0}.
+     */
+    public static long getLastGrantedMillis(@NonNull String perm) {
+        Record record = RECORDS.get(perm);
+        return record != null ? record.mLastGranted : 0;
+    }
+
+    /**
+     * Record the result of a system request. The in-memory history is updated before returning,
+     * the file is written in the background.
+     */
+    static void onRequestPermissionsResult(@NonNull String[] permissions,
+                                           @NonNull int[] grantResults) {
+        ExecutorService executor = sExecutor;
+        if (!sEnabled || executor == null || permissions.length == 0) {
+            return;
+        }
+        final int count = Math.min(permissions.length, grantResults.length);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            record(permissions[i], grantResults[i] == PackageManager.PERMISSION_GRANTED, now);
+        }
+        final String[] perms = permissions.clone();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < count; i++) {
+                    persist(perms[i]);
+                }
+            }
+        });
+    }
+
+    private static void record(@NonNull String perm, boolean granted, long now) {
+        // Records are replaced atomically, the file may be loading into the same map
+        while (true) {
+            Record previous = RECORDS.get(perm);
+            if (previous == null) {
+                if (RECORDS.putIfAbsent(perm, Record.first(perm, granted, now)) == null) {
+                    return;
+                }
+            } else if (RECORDS.replace(perm, previous, previous.next(granted, now))) {
+                return;
+            }
+        }
+    }
+
+    @NonNull
+    private static File getDirectory(@NonNull Context context) {
+        // Never restored from a backup on another device, where the answers don't apply
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP
+                ? context.getNoBackupFilesDir()
+                : context.getFilesDir();
+    }
+
+    // ============================================================================
+    // File access, executor thread only
+    // ============================================================================
+
+    /**
+     * @return {@code false} if the history could not be read or created.
+     */
+    private static boolean load(@NonNull File file) {
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            sChannel = raf.getChannel();
+            long size = sChannel.size();
+            if (size < HEADER_SIZE) {
+                reset();
+                return true;
+            }
+
+            MappedByteBuffer buffer = sChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            int count = buffer.getInt(OFFSET_COUNT);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || count < 0
+                    || HEADER_SIZE + (long) count * RECORD_SIZE > size) {
+                PermissionLog.w(TAG, "Discarding unreadable permission history");
+                reset();
+                return true;
+            }
+
+            sBuffer = buffer;
+            sRecordCount = count;
+            for (int index = 0; index < count; index++) {
+                Record record = readRecord(buffer, index);
+                if (record != null) {
+                    INDEXES.put(record.mName, index);
+                    merge(record);
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            PermissionLog.e(TAG, "Can't open permission history, it won't be kept", e);
+            close();
+            return false;
+        }
+    }
+
+    /**
+     * Add a record read from the file to the results recorded in memory before it was loaded.
+     */
+    private static void merge(@NonNull Record loaded) {
+        while (true) {
+            Record recorded = RECORDS.putIfAbsent(loaded.mName, loaded);
+            if (recorded == null || RECORDS.replace(loaded.mName, recorded,
+                    loaded.append(recorded))) {
+                return;
+            }
+        }
+    }
+
+    private static void reset() throws IOException {
+        INDEXES.clear();
+        sRecordCount = 0;
+        sBuffer = map(HEADER_SIZE + GROW_RECORDS * RECORD_SIZE);
+        sBuffer.putInt(0, MAGIC);
+        sBuffer.putInt(4, VERSION);
+        sBuffer.putInt(OFFSET_COUNT, 0);
+    }
+
+    @NonNull
+    private static MappedByteBuffer map(long size) throws IOException {
+        // Mapping beyond the end grows the file
+        return sChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    private static void close() {
+        if (sChannel != null) {
+            try {
+                sChannel.close();
+            } catch (IOException ignored) {
+                // Nothing left to do
+            }
+        }
+        sChannel = null;
+        sBuffer = null;
+    }
+
+    /**
+     * Write the current in-memory record of {@code perm}, adding it to the file if needed.
+     */
+    private static void persist(@NonNull String perm) {
+        Record record = RECORDS.get(perm);
+        if (record == null) {
+            return;
+        }
+        Integer index = INDEXES.get(perm);
+        if (index == null) {
+            byte[] name = perm.getBytes(UTF_8);
+            if (name.length > MAX_NAME_BYTES) {
+                PermissionLog.w(TAG, "Permission name too long to be recorded: " + perm);
+                return;
+            }
+            if (!append(name)) {
+                return;
+            }
+            index = sRecordCount - 1;
+            INDEXES.put(perm, index);
+        }
+        writeValues(index, record);
+    }
+
+    /**
+     * Add a record for a new permission at the end of the file, at index {@code sRecordCount}.
+     *
+     * @return {@code false} if the file is not available or could not grow, the record is then
+     * kept in memory only.
+     */
+    private static boolean append(@NonNull byte[] name) {
+        if (sBuffer == null) {
+            return false;
+        }
+        int offset = HEADER_SIZE + sRecordCount * RECORD_SIZE;
+        if (offset + RECORD_SIZE > sBuffer.capacity()) {
+            try {
+                sBuffer = map(offset + GROW_RECORDS * RECORD_SIZE);
+            } catch (IOException e) {
+                PermissionLog.e(TAG, "Can't grow permission history", e);
+                return false;
+            }
+        }
+        sBuffer.putShort(offset, (short) name.length);
+        ByteBuffer nameBuffer = sBuffer.duplicate();
+        nameBuffer.position(offset + OFFSET_NAME);
+        nameBuffer.put(name);
+        sRecordCount++;
+        // Count last, so that a record is only visible once it is complete
+        sBuffer.putInt(OFFSET_COUNT, sRecordCount);
+        return true;
+    }
+
+    private static void writeValues(int index, @NonNull Record record) {
+        MappedByteBuffer buffer = sBuffer;
+        if (buffer == null || index >= sRecordCount) {
+            return;
+        }
+        int offset = HEADER_SIZE + index * RECORD_SIZE;
+        buffer.put(offset + OFFSET_LAST_RESULT, (byte) record.mLastResult);
+        buffer.putInt(offset + OFFSET_ASK_COUNT, record.mAskCount);
+        buffer.putLong(offset + OFFSET_FIRST_ASKED, record.mFirstAsked);
+        buffer.putLong(offset + OFFSET_LAST_ASKED, record.mLastAsked);
+        buffer.putLong(offset + OFFSET_LAST_GRANTED, record.mLastGranted);
+    }
+
+    @Nullable
+    private static Record readRecord(@NonNull ByteBuffer buffer, int index) {
+        int offset = HEADER_SIZE + index * RECORD_SIZE;
+        int nameLength = buffer.getShort(offset);
+        if (nameLength <= 0 || nameLength > MAX_NAME_BYTES) {
+            return null;
+        }
+        byte[] name = new byte[nameLength];
+        ByteBuffer nameBuffer = buffer.duplicate();
+        nameBuffer.position(offset + OFFSET_NAME);
+        nameBuffer.get(name);
+        return new Record(new String(name, UTF_8),
+                buffer.getInt(offset + OFFSET_ASK_COUNT),
+                buffer.get(offset + OFFSET_LAST_RESULT),
+                buffer.getLong(offset + OFFSET_FIRST_ASKED),
+                buffer.getLong(offset + OFFSET_LAST_ASKED),
+                buffer.getLong(offset + OFFSET_LAST_GRANTED));
+    }
+
+    /**
+     * Immutable copy of one record of the file.
+     */
+    private static final class Record {
+
+        final String mName;
+        final int mAskCount;
+        final int mLastResult;
+        final long mFirstAsked;
+        final long mLastAsked;
+        final long mLastGranted;
+
+        Record(@NonNull String name,
+               int askCount,
+               int lastResult,
+               long firstAsked,
+               long lastAsked,
+               long lastGranted) {
+            mName = name;
+            mAskCount = askCount;
+            mLastResult = lastResult;
+            mFirstAsked = firstAsked;
+            mLastAsked = lastAsked;
+            mLastGranted = lastGranted;
+        }
+
+        @NonNull
+        static Record first(@NonNull String name, boolean granted, long now) {
+            return new Record(name, 1, granted ? RESULT_GRANTED : RESULT_DENIED, now, now,
+                    granted ? now : 0);
+        }
+
+        @NonNull
+        Record next(boolean granted, long now) {
+            return new Record(mName, mAskCount + 1, granted ? RESULT_GRANTED : RESULT_DENIED,
+                    mFirstAsked, now, granted ? now : mLastGranted);
+        }
+
+        /**
+         * @return this record followed by the requests of {@code later}.
+         */
+        @NonNull
+        Record append(@NonNull Record later) {
+            return new Record(mName, mAskCount + later.mAskCount, later.mLastResult,
+                    mFirstAsked != 0 ? mFirstAsked : later.mFirstAsked, later.mLastAsked,
+                    later.mLastGranted != 0 ? later.mLastGranted : mLastGranted);
+        }
+    }
+}
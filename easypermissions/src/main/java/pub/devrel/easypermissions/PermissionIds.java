@@ -0,0 +1,155 @@
+package pub.devrel.easypermissions;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Intern table giving every permission string a small integer id, used as bit index by {@link
+ * PermissionSet}.
+ * <p>
+ * The runtime permissions of the platform have fixed ids, so they can be stored by id in a Bundle
+ * and survive process death. Any other permission gets the next free id the
+ * first time it is seen, which is only stable for the lifetime of the process.
+ */
+final class PermissionIds {
+
+    /**
+     * Well-known runtime permissions. Ids are persisted in saved state: only ever append.
+     */
+    private static final String[] WELL_KNOWN = {
+            "android.permission.READ_CALENDAR",
+            "android.permission.WRITE_CALENDAR",
+            "android.permission.CAMERA",
+            "android.permission.READ_CONTACTS",
+            "android.permission.WRITE_CONTACTS",
+            "android.permission.GET_ACCOUNTS",
+            "android.permission.ACCESS_FINE_LOCATION",
+            "android.permission.ACCESS_COARSE_LOCATION",
+            "android.permission.RECORD_AUDIO",
+            "android.permission.READ_PHONE_STATE",
+            "android.permission.CALL_PHONE",
+            "android.permission.READ_CALL_LOG",
+            "android.permission.WRITE_CALL_LOG",
+            "com.android.voicemail.permission.ADD_VOICEMAIL",
+            "android.permission.USE_SIP",
+            "android.permission.PROCESS_OUTGOING_CALLS",
+            "android.permission.BODY_SENSORS",
+            "android.permission.SEND_SMS",
+            "android.permission.RECEIVE_SMS",
+            "android.permission.READ_SMS",
+            "android.permission.RECEIVE_WAP_PUSH",
+            "android.permission.RECEIVE_MMS",
+            "android.permission.READ_EXTERNAL_STORAGE",
+            "android.permission.WRITE_EXTERNAL_STORAGE",
+            "android.permission.ANSWER_PHONE_CALLS",
+            "android.permission.READ_PHONE_NUMBERS",
+            "android.permission.ACCEPT_HANDOVER",
+            "android.permission.ACCESS_BACKGROUND_LOCATION",
+            "android.permission.ACTIVITY_RECOGNITION",
+            "android.permission.ACCESS_MEDIA_LOCATION",
+            "android.permission.BLUETOOTH_SCAN",
+            "android.permission.BLUETOOTH_CONNECT",
+            "android.permission.BLUETOOTH_ADVERTISE",
+            "android.permission.UWB_RANGING",
+            "android.permission.NEARBY_WIFI_DEVICES",
+            "android.permission.POST_NOTIFICATIONS",
+            "android.permission.READ_MEDIA_IMAGES",
+            "android.permission.READ_MEDIA_VIDEO",
+            "android.permission.READ_MEDIA_AUDIO",
+            "android.permission.BODY_SENSORS_BACKGROUND",
+    };
+
+    private static final ConcurrentMap<String, Integer> IDS = new ConcurrentHashMap<>();
+
+    private static volatile String[] sNames;
+    private static int sSize = WELL_KNOWN.length;
+
+    static {
+        String[] names = new String[WELL_KNOWN.length * 2];
+        for (int i = 0; i < WELL_KNOWN.length; i++) {
+            IDS.put(WELL_KNOWN[i], i);
+            names[i] = WELL_KNOWN[i];
+        }
+        sNames = names;
+    }
+
+    private PermissionIds() {
+    }
+
+    /**
+     * Get the id of {@code perm}, assigning a new one if it was never seen before.
+     */
+    static int idOf(@NonNull String perm) {
+        Integer id = IDS.get(perm);
+        if (id != null) {
+            return id;
+        }
+        return intern(perm);
+    }
+
+    /**
+     * Get the id of {@code perm} without assigning one, so that read-only lookups don't grow the
+     * table.
+     *
+     * @return the id, or -1 if {@code perm} was never seen before.
+     */
+    static int peekId(@NonNull String perm) {
+        Integer id = IDS.get(perm);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * Get the ids of {@code perms} in the same order, for storing them in saved state.
+     *
+     * @return {@code null} if one of the permissions is not well-known.
+     */
+    @Nullable
+    static int[] wellKnownIdsOf(@NonNull String[] perms) {
+        int[] ids = new int[perms.length];
+        for (int i = 0; i < perms.length; i++) {
+            int id = peekId(perms[i]);
+            if (id < 0 || !isWellKnown(id)) {
+                return null;
+            }
+            ids[i] = id;
+        }
+        return ids;
+    }
+
+    /**
+     * Get the permission with the given id.
+     */
+    @NonNull
+    static String nameOf(int id) {
+        return sNames[id];
+    }
+
+    /**
+     * @return {@code true} if {@code id} is the same in every process.
+     */
+    static boolean isWellKnown(int id) {
+        return id < WELL_KNOWN.length;
+    }
+
+    private static synchronized int intern(@NonNull String perm) {
+        Integer id = IDS.get(perm);
+        if (id != null) {
+            return id;
+        }
+
+        String[] names = sNames;
+        if (sSize == names.length) {
+            String[] grown = new String[names.length * 2];
+            System.arraycopy(names, 0, grown, 0, names.length);
+            names = grown;
+        }
+        names[sSize] = perm;
+        // Publish the name before the id, readers go through IDS first
+        sNames = names;
+        IDS.put(perm, sSize);
+        return sSize++;
+    }
+}
@@ -0,0 +1,113 @@
+package pub.devrel.easypermissions;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.RestrictTo;
+import android.util.Log;
+
+/**
+ * Logging facade of the library.
+ * <p>
+ * Warnings and errors go to logcat by default, such as exceptions thrown by {@link
+ * AfterPermissionGranted} methods. Install {@link #androidLogger(int)} with a lower priority in
+ * development builds, or any {@link PermissionLogger} to route messages elsewhere. Debug messages
+ * are only built once the logger accepts their priority, and the consumer ProGuard rules remove
+ * debug calls from minified builds altogether.
+ */
+public final class PermissionLog {
+
+    /**
+     * Logger that drops everything.
+     */
+    public static final PermissionLogger NONE = new PermissionLogger() {
+        @Override
+        public boolean isLoggable(int priority) {
+            return false;
+        }
+
+        @Override
+        public void log(int priority,
+                        @NonNull String tag,
+                        @NonNull String message,
+                        @Nullable Throwable tr) {
+        }
+    };
+
+    /**
+     * Logger used until {@link #setLogger(PermissionLogger)} is called: warnings and errors to
+     * logcat.
+     */
+    public static final PermissionLogger DEFAULT = androidLogger(Log.WARN);
+
+    @NonNull
+    private static volatile PermissionLogger sLogger = DEFAULT;
+
+    private PermissionLog() {
+    }
+
+    /**
+     * @param logger receives the library's messages, {@code null} or {@link #NONE} to log nothing.
+     */
+    public static void setLogger(@Nullable PermissionLogger logger) {
+        sLogger = logger != null ? logger : NONE;
+    }
+
+    /**
+     * @return a logger writing to logcat messages of at least {@code minPriority}, such as {@link
+     * Log#DEBUG}.
+     */
+    @NonNull
+    public static PermissionLogger androidLogger(final int minPriority) {
+        return new PermissionLogger() {
+            @Override
+            public boolean isLoggable(int priority) {
+                return priority >= minPriority;
+            }
+
+            @Override
+            public void log(int priority,
+                            @NonNull String tag,
+                            @NonNull String message,
+                            @Nullable Throwable tr) {
+                Log.println(priority, tag, tr != null
+                        ? message + '\n' + Log.getStackTraceString(tr)
+                        : message);
+            }
+        };
+    }
+
+    @RestrictTo(RestrictTo.Scope.LIBRARY)
+    public static boolean isLoggable(int priority) {
+        return sLogger.isLoggable(priority);
+    }
+
+    @RestrictTo(RestrictTo.Scope.LIBRARY)
+    public static void d(@NonNull String tag, @NonNull String message) {
+        log(Log.DEBUG, tag, message, null);
+    }
+
+    @RestrictTo(RestrictTo.Scope.LIBRARY)
+    public static void w(@NonNull String tag, @NonNull String message) {
+        log(Log.WARN, tag, message, null);
+    }
+
+    @RestrictTo(RestrictTo.Scope.LIBRARY)
+    public static void w(@NonNull String tag, @NonNull String message, @Nullable Throwable tr) {
+        log(Log.WARN, tag, message, tr);
+    }
+
+    @RestrictTo(RestrictTo.Scope.LIBRARY)
+    public static void e(@NonNull String tag, @NonNull String message, @Nullable Throwable tr) {
+        log(Log.ERROR, tag, message, tr);
+    }
+
+    private static void log(int priority,
+                            @NonNull String tag,
+                            @NonNull String message,
+                            @Nullable Throwable tr) {
+        PermissionLogger logger = sLogger;
+        if (logger.isLoggable(priority)) {
+            logger.log(priority, tag, message, tr);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package pub.devrel.easypermissions;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Destination of the library's log messages, see {@link PermissionLog#setLogger(PermissionLogger)}.
+ * <p>
+ * Priorities are those of {@link android.util.Log}, such as {@link android.util.Log#DEBUG}.
+ */
+public interface PermissionLogger {
+
+    /**
+     * @return {@code true} if messages of {@code priority} should be built and passed to {@link
+     * #log(int, String, String, Throwable)}.
+     */
+    boolean isLoggable(int priority);
+
+    void log(int priority, @NonNull String tag, @NonNull String message, @Nullable Throwable tr);
+
+}
@@ -0,0 +1,320 @@
+package pub.devrel.easypermissions;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.os.Bundle;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.RestrictTo;
+import android.support.annotation.VisibleForTesting;
+import android.support.v4.app.Fragment;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import pub.devrel.easypermissions.helper.PermissionHelper;
+
+/**
+ * Latency and outcome metrics of permission request flows.
+ * <p>
+ * Nothing is tracked until a {@link PermissionMetricsListener} is registered: every hook then
+ * returns after a single field read. With a listener, every flow is reported to it and its
+ * durations are recorded in {@link #getRequestLatency()} and {@link #getRationaleLatency()}.
+ * <p>
+ * A flow is identified by its Activity and request code, like requests merged by the {@code
+ * PermissionRequestCoordinator}, so that Activities using the same codes don't mix up their
+ * flows. Flows of a destroyed Activity are dropped without being reported, including when it is
+ * recreated while the system dialog is showing. The check counts of a flow are approximate, see
+ * {@link PermissionFlowMetrics}.
+ */
+public final class PermissionMetrics {
+
+    private static final LatencyHistogram REQUEST_LATENCY = new LatencyHistogram();
+    private static final LatencyHistogram RATIONALE_LATENCY = new LatencyHistogram();
+
+    private static final AtomicInteger CHECKS = new AtomicInteger();
+    private static final AtomicInteger RATIONALE_QUERIES = new AtomicInteger();
+
+    /**
+     * Flows in progress, main thread only.
+     */
+    private static final List<PermissionFlowMetrics> FLOWS = new ArrayList<>();
+
+    private static Application sApplication;
+
+    @Nullable
+    private static volatile PermissionMetricsListener sListener;
+
+    private PermissionMetrics() {
+    }
+
+    /**
+     * Remove the listener and forget the registered lifecycle callbacks, e.g. between tests that
+     * each get a new {@link Application}.
+     */
+    @VisibleForTesting
+    static void reset() {
+        setListener(null);
+        sApplication = null;
+    }
+
+    /**
+     * Start or stop recording metrics. Flows in progress are dropped when the listener is
+     * removed.
+     */
+    @MainThread
+    public static void setListener(@Nullable PermissionMetricsListener listener) {
+        sListener = listener;
+        if (listener == null) {
+            FLOWS.clear();
+        }
+    }
+
+    /**
+     * @return the distribution of times from {@code requestPermissions} to the result.
+     */
+    @NonNull
+    public static LatencyHistogram getRequestLatency() {
+        return REQUEST_LATENCY;
+    }
+
+    /**
+     * @return the distribution of times the rationale dialog was showing.
+     */
+    @NonNull
+    public static LatencyHistogram getRationaleLatency() {
+        return RATIONALE_LATENCY;
+    }
+
+    // ============================================================================
+    // Hooks, all of them return immediately without a listener
+    // ============================================================================
+
+    /**
+     * A {@code checkSelfPermission} call was made, from any thread.
+     */
+    static void onPermissionCheck() {
+        if (sListener != null) {
+            CHECKS.incrementAndGet();
+        }
+    }
+
+    /**
+     * A {@code shouldShowRequestPermissionRationale} call was made.
+     */
+    @RestrictTo(RestrictTo.Scope.LIBRARY)
+    public static void onRationaleQuery() {
+        if (sListener != null) {
+            RATIONALE_QUERIES.incrementAndGet();
+        }
+    }
+
+    static void onRequestStarted(@NonNull PermissionHelper helper,
+                                 int requestCode,
+                                 @NonNull String[] perms) {
+        if (sListener == null) {
+            return;
+        }
+        Context context = helper.getContext();
+        if (context != null) {
+            registerCallbacks(context);
+        }
+        // A new request with the same code replaces a flow whose result never came
+        removeFlow(context, requestCode);
+        FLOWS.add(new PermissionFlowMetrics(helper, requestCode, perms,
+                CHECKS.get(), RATIONALE_QUERIES.get()));
+    }
+
+    /**
+     * The flow ended before asking the user because everything was granted already, or because
+     * nothing requested was declared in the manifest.
+     */
+    static void onRequestSkipped(@Nullable Context context, int requestCode) {
+        if (sListener == null) {
+            return;
+        }
+        removeFlow(context, requestCode);
+    }
+
+    @RestrictTo(RestrictTo.Scope.LIBRARY)
+    public static void onRationaleShown(@Nullable Context context, int requestCode) {
+        if (sListener == null) {
+            return;
+        }
+        PermissionFlowMetrics flow = getFlow(context, requestCode);
+        if (flow != null) {
+            flow.onRationaleShown();
+        }
+    }
+
+    static void onRationaleAnswered(@Nullable Context context,
+                                    int requestCode,
+                                    int permissionCount,
+                                    boolean accepted) {
+        if (sListener == null) {
+            return;
+        }
+        PermissionFlowMetrics flow = getFlow(context, requestCode);
+        if (flow == null) {
+            return;
+        }
+        flow.onRationaleAnswered(accepted);
+        RATIONALE_LATENCY.record(flow.getRationaleMillis());
+        if (!accepted) {
+            FLOWS.remove(flow);
+            finish(flow, 0, permissionCount);
+        }
+    }
+
+    /**
+     * @param receivers the receivers the result was forwarded to, used to tell apart flows of
+     *                  different Activities with the same request code.
+     */
+    static void onRequestPermissionsResult(int requestCode,
+                                           @NonNull PermissionResult result,
+                                           @NonNull Object[] receivers) {
+        if (sListener == null) {
+            return;
+        }
+        PermissionFlowMetrics flow = null;
+        for (PermissionFlowMetrics candidate : FLOWS) {
+            if (candidate.getRequestCode() == requestCode
+                    && isForwardedFrom(candidate.getContext(), receivers)) {
+                flow = candidate;
+                break;
+            }
+        }
+        if (flow == null) {
+            return;
+        }
+        FLOWS.remove(flow);
+
+        if (result.getDeniedCount() > 0) {
+            flow.setDenied(result.getDenied());
+        }
+        finish(flow, result.getGrantedCount(), result.getDeniedCount());
+    }
+
+    private static void finish(@NonNull PermissionFlowMetrics flow,
+                               int grantedCount,
+                               int deniedCount) {
+        flow.finish(grantedCount, deniedCount, CHECKS.get(), RATIONALE_QUERIES.get());
+        report(flow);
+    }
+
+    private static void report(@NonNull PermissionFlowMetrics flow) {
+        REQUEST_LATENCY.record(flow.getDurationMillis());
+        PermissionMetricsListener listener = sListener;
+        if (listener != null) {
+            listener.onPermissionFlowCompleted(flow);
+        }
+    }
+
+    @Nullable
+    private static PermissionFlowMetrics getFlow(@Nullable Context context, int requestCode) {
+        for (PermissionFlowMetrics flow : FLOWS) {
+            if (flow.getRequestCode() == requestCode && flow.getContext() == context) {
+                return flow;
+            }
+        }
+        return null;
+    }
+
+    private static void removeFlow(@Nullable Context context, int requestCode) {
+        PermissionFlowMetrics flow = getFlow(context, requestCode);
+        if (flow != null) {
+            FLOWS.remove(flow);
+        }
+    }
+
+    /**
+     * @return {@code true} if one of {@code receivers} belongs to {@code context}, or if none of
+     * them tells which Activity it belongs to.
+     */
+    private static boolean isForwardedFrom(@Nullable Context context, @NonNull Object[] receivers) {
+        boolean known = false;
+        for (Object receiver : receivers) {
+            Context receiverContext = contextOf(receiver);
+            if (receiverContext != null) {
+                if (receiverContext == context) {
+                    return true;
+                }
+                known = true;
+            }
+        }
+        return !known;
+    }
+
+    /**
+     * @return the Activity of {@code host}, an Activity or a Fragment.
+     */
+    @Nullable
+    static Context contextOf(@Nullable Object host) {
+        if (host instanceof Activity) {
+            return (Activity) host;
+        }
+        if (host instanceof Fragment) {
+            return ((Fragment) host).getActivity();
+        }
+        if (host instanceof android.app.Fragment) {
+            return ((android.app.Fragment) host).getActivity();
+        }
+        return null;
+    }
+
+    private static void registerCallbacks(@NonNull Context context) {
+        if (sApplication != null) {
+            return;
+        }
+        Context appContext = context.getApplicationContext();
+        if (!(appContext instanceof Application)) {
+            return;
+        }
+        sApplication = (Application) appContext;
+        sApplication.registerActivityLifecycleCallbacks(new DroppingCallbacks());
+    }
+
+    /**
+     * Drops the flows of destroyed Activities, their results will not be matched to them.
+     */
+    private static class DroppingCallbacks implements Application.ActivityLifecycleCallbacks {
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+            for (Iterator<PermissionFlowMetrics> it = FLOWS.iterator(); it.hasNext(); ) {
+                Context context = it.next().getContext();
+                if (context == null || context == activity) {
+                    it.remove();
+                }
+            }
+        }
+
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityStarted(Activity activity) {
+        }
+
+        @Override
+        public void onActivityResumed(Activity activity) {
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+    }
+}
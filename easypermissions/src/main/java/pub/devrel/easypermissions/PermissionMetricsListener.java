@@ -0,0 +1,19 @@
+package pub.devrel.easypermissions;
+
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+
+/**
+ * Receives a record of every permission request flow, from {@code requestPermissions} to its
+ * result. Register with {@link PermissionMetrics#setListener(PermissionMetricsListener)}.
+ */
+public interface PermissionMetricsListener {
+
+    /**
+     * Called once a flow completes, either with a permission result or because the user declined
+     * the rationale dialog.
+     */
+    @MainThread
+    void onPermissionFlowCompleted(@NonNull PermissionFlowMetrics metrics);
+
+}
@@ -0,0 +1,144 @@
+package pub.devrel.easypermissions;
+
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.SparseArray;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Receivers of permission results registered for specific request codes, see {@link
+ * EasyPermissions#registerReceiver(int, Object)}.
+ * <p>
+ * Receivers are held weakly and looked up by request code, and what each of them can handle is
+ * resolved once when it registers, so delivering a result costs no {@code instanceof} check or
+ * annotation lookup.
+ */
+@MainThread
+final class PermissionReceiverRegistry {
+
+    static final int FLAG_CALLBACKS = 1;
+    static final int FLAG_SET_CALLBACKS = 1 << 1;
+    static final int FLAG_ANNOTATED_METHODS = 1 << 2;
+
+    private static final SparseArray<List<Receiver>> RECEIVERS = new SparseArray<>();
+
+    private PermissionReceiverRegistry() {
+    }
+
+    static void register(int requestCode, @NonNull Object receiver) {
+        List<Receiver> receivers = RECEIVERS.get(requestCode);
+        if (receivers == null) {
+            receivers = new ArrayList<>(1);
+            RECEIVERS.put(requestCode, receivers);
+        }
+        for (Iterator<Receiver> it = receivers.iterator(); it.hasNext(); ) {
+            Object registered = it.next().get();
+            if (registered == receiver) {
+                return;
+            }
+            if (registered == null) {
+                it.remove();
+            }
+        }
+        receivers.add(new Receiver(receiver, requestCode));
+    }
+
+    static void unregister(int requestCode, @NonNull Object receiver) {
+        List<Receiver> receivers = RECEIVERS.get(requestCode);
+        if (receivers == null) {
+            return;
+        }
+        for (Iterator<Receiver> it = receivers.iterator(); it.hasNext(); ) {
+            Object registered = it.next().get();
+            if (registered == receiver || registered == null) {
+                it.remove();
+            }
+        }
+        if (receivers.isEmpty()) {
+            RECEIVERS.remove(requestCode);
+        }
+    }
+
+    static void unregister(@NonNull Object receiver) {
+        for (int i = RECEIVERS.size() - 1; i >= 0; i--) {
+            unregister(RECEIVERS.keyAt(i), receiver);
+        }
+    }
+
+    /**
+     * @return the live receivers of {@code requestCode}, {@code null} if none is registered.
+     */
+    @Nullable
+    static Receiver[] get(int requestCode) {
+        List<Receiver> receivers = RECEIVERS.get(requestCode);
+        if (receivers == null) {
+            return null;
+        }
+        for (Iterator<Receiver> it = receivers.iterator(); it.hasNext(); ) {
+            if (it.next().get() == null) {
+                it.remove();
+            }
+        }
+        if (receivers.isEmpty()) {
+            RECEIVERS.remove(requestCode);
+            return null;
+        }
+        // Copied, receivers may unregister while handling the result
+        return receivers.toArray(new Receiver[receivers.size()]);
+    }
+
+    /**
+     * @return the {@code FLAG_*} callback interfaces implemented by {@code receiver}.
+     */
+    static int capabilitiesOf(@NonNull Object receiver) {
+        int flags = 0;
+        if (receiver instanceof EasyPermissions.PermissionCallbacks) {
+            flags |= FLAG_CALLBACKS;
+        }
+        if (receiver instanceof EasyPermissions.PermissionSetCallbacks) {
+            flags |= FLAG_SET_CALLBACKS;
+        }
+        return flags;
+    }
+
+    /**
+     * A registered receiver and what it can handle.
+     */
+    static final class Receiver {
+
+        private final WeakReference<Object> mReceiver;
+        final int mFlags;
+        @Nullable
+        final PermissionDispatcher<Object> mDispatcher;
+        /**
+         * Annotated methods found with reflection, only used without a dispatcher.
+         */
+        @NonNull
+        final Method[] mMethods;
+
+        Receiver(@NonNull Object receiver, int requestCode) {
+            mReceiver = new WeakReference<>(receiver);
+            mDispatcher = PermissionDispatchers.find(receiver.getClass());
+            mMethods = mDispatcher != null
+                    ? new Method[0]
+                    : AnnotatedMethodIndex.getMethods(receiver.getClass(), requestCode);
+
+            int flags = capabilitiesOf(receiver);
+            if (mDispatcher != null || mMethods.length > 0) {
+                flags |= FLAG_ANNOTATED_METHODS;
+            }
+            mFlags = flags;
+        }
+
+        @Nullable
+        Object get() {
+            return mReceiver.get();
+        }
+    }
+}
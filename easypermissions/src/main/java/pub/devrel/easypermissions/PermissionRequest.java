@@ -0,0 +1,302 @@
+package pub.devrel.easypermissions;
+
+import android.app.Activity;
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.StringRes;
+import android.support.v4.app.Fragment;
+
+import java.util.Arrays;
+
+import pub.devrel.easypermissions.helper.PermissionHelper;
+
+/**
+ * An immutable model object that holds all parameters of a permission request, passed to {@link
+ * EasyPermissions#requestPermissions(PermissionRequest)}.
+ * <p>
+ * Use the {@link Builder} to create a request.
+ */
+public final class PermissionRequest {
+
+    /**
+     * Priority for requests the user is not directly waiting for, e.g. a background sync prompt.
+     */
+    public static final int PRIORITY_LOW = -1;
+
+    /**
+     * Default priority.
+     */
+    public static final int PRIORITY_NORMAL = 0;
+
+    /**
+     * Priority for requests that block what the user is doing, e.g. opening the camera.
+     */
+    public static final int PRIORITY_HIGH = 1;
+
+    private final PermissionHelper mHelper;
+    private final String[] mPerms;
+    private final int mRequestCode;
+    private final TextResource mRationale;
+    private final int mPositiveButtonText;
+    private final int mNegativeButtonText;
+    private final int mPriority;
+    @Nullable
+    private final RationaleRenderer mRationaleRenderer;
+
+    private PermissionRequest(PermissionHelper helper,
+                              String[] perms,
+                              int requestCode,
+                              TextResource rationale,
+                              int positiveButtonText,
+                              int negativeButtonText,
+                              int priority,
+                              @Nullable RationaleRenderer rationaleRenderer) {
+        mHelper = helper;
+        mPerms = perms.clone();
+        mRequestCode = requestCode;
+        mRationale = rationale;
+        mPositiveButtonText = positiveButtonText;
+        mNegativeButtonText = negativeButtonText;
+        mPriority = priority;
+        mRationaleRenderer = rationaleRenderer;
+    }
+
+    @NonNull
+    PermissionHelper getHelper() {
+        return mHelper;
+    }
+
+    @NonNull
+    public String[] getPerms() {
+        return mPerms.clone();
+    }
+
+    public int getRequestCode() {
+        return mRequestCode;
+    }
+
+    /**
+     * @return the rationale, resolved with the host's current configuration if it was set as a
+     * string resource.
+     */
+    @NonNull
+    public String getRationale() {
+        Context context = mHelper.getContext();
+        String rationale = context != null ? mRationale.resolve(context) : null;
+        return rationale != null ? rationale : "";
+    }
+
+    @StringRes
+    public int getPositiveButtonText() {
+        return mPositiveButtonText;
+    }
+
+    @StringRes
+    public int getNegativeButtonText() {
+        return mNegativeButtonText;
+    }
+
+    public int getPriority() {
+        return mPriority;
+    }
+
+    /**
+     * @return the renderer of this request, {@code null} to use the default one.
+     */
+    @Nullable
+    public RationaleRenderer getRationaleRenderer() {
+        return mRationaleRenderer;
+    }
+
+    /**
+     * @return the configuration of a rationale dialog for this request, with the rationale left
+     * unresolved.
+     */
+    @NonNull
+    RationaleDialogConfig toRationaleDialogConfig() {
+        return new RationaleDialogConfig(mPositiveButtonText, mNegativeButtonText, mRationale,
+                mRequestCode, mPriority, mPerms);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        PermissionRequest request = (PermissionRequest) o;
+        return mRequestCode == request.mRequestCode
+                && mPriority == request.mPriority
+                && Arrays.equals(mPerms, request.mPerms);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Arrays.hashCode(mPerms);
+        result = 31 * result + mRequestCode;
+        result = 31 * result + mPriority;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "PermissionRequest{"
+                + "mPerms=" + Arrays.toString(mPerms)
+                + ", mRequestCode=" + mRequestCode
+                + ", mPriority=" + mPriority
+                + '}';
+    }
+
+    /**
+     * Builder to build a permission request with variable options.
+     *
+     * @see PermissionRequest
+     */
+    public static final class Builder {
+
+        private final PermissionHelper mHelper;
+        private final int mRequestCode;
+        private final String[] mPerms;
+
+        private TextResource mRationale;
+        private int mPositiveButtonText = -1;
+        private int mNegativeButtonText = -1;
+        private int mPriority = PRIORITY_NORMAL;
+        private RationaleRenderer mRationaleRenderer;
+
+        /**
+         * Construct a new permission request builder with a host, request code, and the
+         * requested permissions.
+         *
+         * @param activity    the permission request host
+         * @param requestCode request code to track this request, must be &lt; 256
+         * @param perms       the set of permissions to be requested
+         */
+        public Builder(@NonNull Activity activity, int requestCode, @NonNull String... perms) {
+            mHelper = PermissionHelper.getInstance(activity);
+            mRequestCode = requestCode;
+            mPerms = perms;
+        }
+
+        /**
+         * @see #Builder(Activity, int, String...)
+         */
+        public Builder(@NonNull Fragment fragment, int requestCode, @NonNull String... perms) {
+            mHelper = PermissionHelper.getInstance(fragment);
+            mRequestCode = requestCode;
+            mPerms = perms;
+        }
+
+        /**
+         * @see #Builder(Activity, int, String...)
+         */
+        public Builder(@NonNull android.app.Fragment fragment,
+                       int requestCode,
+                       @NonNull String... perms) {
+            mHelper = PermissionHelper.getInstance(fragment);
+            mRequestCode = requestCode;
+            mPerms = perms;
+        }
+
+        Builder(@NonNull PermissionHelper helper, int requestCode, @NonNull String... perms) {
+            mHelper = helper;
+            mRequestCode = requestCode;
+            mPerms = perms;
+        }
+
+        /**
+         * Set the rationale to display to the user if they don't allow your permissions the
+         * first time.
+         */
+        @NonNull
+        public Builder setRationale(@Nullable String rationale) {
+            mRationale = TextResource.of(rationale);
+            return this;
+        }
+
+        /**
+         * Set the rationale from a string resource, formatted with {@code formatArgs}. The
+         * resource is only resolved when the rationale is shown. Arguments must be strings or
+         * boxed primitives.
+         *
+         * @throws IllegalArgumentException if an argument is of another type.
+         * @see #setRationale(String)
+         */
+        @NonNull
+        public Builder setRationale(@StringRes int rationale, @Nullable Object... formatArgs) {
+            mRationale = TextResource.of(rationale, formatArgs);
+            return this;
+        }
+
+        /**
+         * Set the positive button text for the rationale dialog, default is {@link
+         * android.R.string#ok}.
+         */
+        @NonNull
+        public Builder setPositiveButtonText(@StringRes int positiveButtonText) {
+            mPositiveButtonText = positiveButtonText;
+            return this;
+        }
+
+        /**
+         * Set the negative button text for the rationale dialog, default is {@link
+         * android.R.string#cancel}.
+         */
+        @NonNull
+        public Builder setNegativeButtonText(@StringRes int negativeButtonText) {
+            mNegativeButtonText = negativeButtonText;
+            return this;
+        }
+
+        /**
+         * Set how urgent this request is when several requests wait for the system dialog, see
+         * {@link EasyPermissions#setRequestSchedulingEnabled(boolean)}. Default is {@link
+         * #PRIORITY_NORMAL}.
+         */
+        @NonNull
+        public Builder setPriority(int priority) {
+            mPriority = priority;
+            return this;
+        }
+
+        /**
+         * Set how the rationale of this request is shown, default is the renderer set with {@link
+         * EasyPermissions#setDefaultRationaleRenderer(RationaleRenderer)}.
+         *
+         * @see RationaleRenderers
+         */
+        @NonNull
+        public Builder setRationaleRenderer(@Nullable RationaleRenderer rationaleRenderer) {
+            mRationaleRenderer = rationaleRenderer;
+            return this;
+        }
+
+        /**
+         * Build the permission request.
+         */
+        @NonNull
+        public PermissionRequest build() {
+            if (mRationale == null) {
+                mRationale = TextResource.of("");
+            }
+            if (mPositiveButtonText == -1) {
+                mPositiveButtonText = android.R.string.ok;
+            }
+            if (mNegativeButtonText == -1) {
+                mNegativeButtonText = android.R.string.cancel;
+            }
+            return new PermissionRequest(
+                    mHelper,
+                    mPerms,
+                    mRequestCode,
+                    mRationale,
+                    mPositiveButtonText,
+                    mNegativeButtonText,
+                    mPriority,
+                    mRationaleRenderer);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package pub.devrel.easypermissions;
+
+import android.content.pm.PackageManager;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.util.Pools;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Read-only view over the {@code permissions} and {@code grantResults} arrays of a permission
+ * request result.
+ * <p>
+ * Instances are pooled and reused by {@link EasyPermissions}: a result, and the lists it returns,
+ * are only valid until the callback it was passed to returns. Copy anything that has to be kept,
+ * or use {@link #getGrantedCopy()} and {@link #getDeniedCopy()}.
+ */
+public final class PermissionResult {
+
+    private static final Pools.Pool<PermissionResult> POOL = new Pools.SynchronizedPool<>(4);
+
+    private static final int[] NO_INDICES = new int[0];
+
+    private String[] mPermissions;
+    @Nullable
+    private int[] mGrantResults;
+
+    private int[] mGrantedIndices = NO_INDICES;
+    private int[] mDeniedIndices = NO_INDICES;
+    private int mGrantedCount;
+    private int mDeniedCount;
+
+    private final PermissionList mGranted = new PermissionList(true);
+    private final PermissionList mDenied = new PermissionList(false);
+
+    @Nullable
+    private List<String> mGrantedCopy;
+    @Nullable
+    private List<String> mDeniedCopy;
+    @Nullable
+    private PermissionSet mGrantedSet;
+    @Nullable
+    private PermissionSet mDeniedSet;
+
+    private PermissionResult() {
+    }
+
+    /**
+     * Get a result view over the arguments of {@code onRequestPermissionsResult}, to be handed
+     * back with {@link #recycle()}.
+     */
+    @NonNull
+    static PermissionResult obtain(@NonNull String[] permissions, @NonNull int[] grantResults) {
+        PermissionResult result = acquire();
+        result.mPermissions = permissions;
+        result.mGrantResults = grantResults;
+        result.split();
+        return result;
+    }
+
+    /**
+     * Get a result in which all {@code permissions} are granted, without building grant results.
+     */
+    @NonNull
+    static PermissionResult obtainAllGranted(@NonNull String[] permissions) {
+        PermissionResult result = acquire();
+        result.mPermissions = permissions;
+        result.mGrantResults = null;
+        result.split();
+        return result;
+    }
+
+    /**
+     * Return this instance to the pool. It must not be used afterwards.
+     */
+    void recycle() {
+        mPermissions = null;
+        mGrantResults = null;
+        mGrantedCount = 0;
+        mDeniedCount = 0;
+        mGrantedCopy = null;
+        mDeniedCopy = null;
+        mGrantedSet = null;
+        mDeniedSet = null;
+        POOL.release(this);
+    }
+
+    @NonNull
+    private static PermissionResult acquire() {
+        PermissionResult result = POOL.acquire();
+        return result != null ? result : new PermissionResult();
+    }
+
+    /**
+     * Index granted and denied permissions, reusing the index arrays of previous results.
+     */
+    private void split() {
+        int count = mPermissions.length;
+        if (mGrantedIndices.length < count) {
+            mGrantedIndices = new int[count];
+            mDeniedIndices = new int[count];
+        }
+        for (int i = 0; i < count; i++) {
+            if (isGranted(i)) {
+                mGrantedIndices[mGrantedCount++] = i;
+            } else {
+                mDeniedIndices[mDeniedCount++] = i;
+            }
+        }
+    }
+
+    /**
+     * @return the number of permissions in the request.
+     */
+    public int size() {
+        return mPermissions.length;
+    }
+
+    @NonNull
+    public String getPermission(int index) {
+        return mPermissions[index];
+    }
+
+    public boolean isGranted(int index) {
+        return mGrantResults == null
+                || mGrantResults[index] == PackageManager.PERMISSION_GRANTED;
+    }
+
+    public int getGrantedCount() {
+        return mGrantedCount;
+    }
+
+    public int getDeniedCount() {
+        return mDeniedCount;
+    }
+
+    /**
+     * @return {@code true} if at least one permission was requested and all were granted.
+     */
+    public boolean isAllGranted() {
+        return mGrantedCount > 0 && mDeniedCount == 0;
+    }
+
+    /**
+     * @return a read-only view of the granted permissions.
+     */
+    @NonNull
+    public List<String> getGranted() {
+        return mGranted;
+    }
+
+    /**
+     * @return a read-only view of the denied permissions.
+     */
+    @NonNull
+    public List<String> getDenied() {
+        return mDenied;
+    }
+
+    /**
+     * @return a read-only copy of the granted permissions, built once per result and still valid
+     * once the result is recycled.
+     */
+    @NonNull
+    public List<String> getGrantedCopy() {
+        if (mGrantedCopy == null) {
+            mGrantedCopy = copyOf(mGranted);
+        }
+        return mGrantedCopy;
+    }
+
+    /**
+     * @return a read-only copy of the denied permissions, built once per result and still valid
+     * once the result is recycled.
+     */
+    @NonNull
+    public List<String> getDeniedCopy() {
+        if (mDeniedCopy == null) {
+            mDeniedCopy = copyOf(mDenied);
+        }
+        return mDeniedCopy;
+    }
+
+    @NonNull
+    public PermissionSet getGrantedSet() {
+        if (mGrantedSet == null) {
+            mGrantedSet = PermissionSet.of(mGranted);
+        }
+        return mGrantedSet;
+    }
+
+    @NonNull
+    public PermissionSet getDeniedSet() {
+        if (mDeniedSet == null) {
+            mDeniedSet = PermissionSet.of(mDenied);
+        }
+        return mDeniedSet;
+    }
+
+    @NonNull
+    private static List<String> copyOf(@NonNull List<String> perms) {
+        return Collections.unmodifiableList(Arrays.asList(perms.toArray(new String[perms.size()])));
+    }
+
+    private final class PermissionList extends AbstractList<String> implements RandomAccess {
+
+        private final boolean mGrantedList;
+
+        PermissionList(boolean grantedList) {
+            mGrantedList = grantedList;
+        }
+
+        @Override
+        public String get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size());
+            }
+            return mPermissions[mGrantedList ? mGrantedIndices[index] : mDeniedIndices[index]];
+        }
+
+        @Override
+        public int size() {
+            return mGrantedList ? mGrantedCount : mDeniedCount;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package pub.devrel.easypermissions;
+
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+
+/**
+ * Receives the result of a single request made with {@link
+ * EasyPermissions#requestPermissions(android.app.Activity, String, PermissionResultCallback,
+ * String...)}, without picking a request code.
+ */
+public interface PermissionResultCallback {
+
+    /**
+     * Called once, when the permissions are granted already, when the user declines the
+     * rationale (all permissions denied) or when the system result arrives. The result is only
+     * valid until this method returns.
+     */
+    @MainThread
+    void onPermissionResult(@NonNull PermissionResult result);
+
+}
@@ -0,0 +1,78 @@
+package pub.devrel.easypermissions;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.StringRes;
+
+import java.util.List;
+
+import pub.devrel.easypermissions.helper.PermissionHelper;
+
+/**
+ * Permission operations bound to a single host (Activity or Fragment).
+ * <p>
+ * Obtained from {@code EasyPermissions.getSession(host)}, a session can be kept for the lifetime
+ * of its host to avoid resolving the host's {@link PermissionHelper} on every call. It must not be
+ * used once the host is destroyed.
+ */
+public class PermissionSession {
+
+    private final PermissionHelper mHelper;
+
+    PermissionSession(@NonNull PermissionHelper helper) {
+        mHelper = helper;
+    }
+
+    /**
+     * @see EasyPermissions#hasPermissions(android.content.Context, String...)
+     */
+    public boolean hasPermissions(@NonNull String... perms) {
+        return EasyPermissions.hasPermissions(mHelper.getContext(), perms);
+    }
+
+    /**
+     * Request permissions with standard OK/Cancel buttons.
+     *
+     * @see EasyPermissions#requestPermissions(android.app.Activity, String, int, int, int,
+     * String...)
+     */
+    public void requestPermissions(@NonNull String rationale,
+                                   int requestCode,
+                                   @NonNull String... perms) {
+        requestPermissions(rationale, android.R.string.ok, android.R.string.cancel,
+                requestCode, perms);
+    }
+
+    /**
+     * @see EasyPermissions#requestPermissions(android.app.Activity, String, int, int, int,
+     * String...)
+     */
+    public void requestPermissions(@NonNull String rationale,
+                                   @StringRes int positiveButton,
+                                   @StringRes int negativeButton,
+                                   int requestCode,
+                                   @NonNull String... perms) {
+        EasyPermissions.requestPermissions(mHelper, rationale, positiveButton, negativeButton,
+                requestCode, perms);
+    }
+
+    /**
+     * @see EasyPermissions#somePermissionPermanentlyDenied(android.app.Activity, List)
+     */
+    public boolean somePermissionPermanentlyDenied(@NonNull List<String> deniedPermissions) {
+        return mHelper.somePermissionPermanentlyDenied(deniedPermissions);
+    }
+
+    /**
+     * @see EasyPermissions#permissionPermanentlyDenied(android.app.Activity, String)
+     */
+    public boolean permissionPermanentlyDenied(@NonNull String deniedPermission) {
+        return mHelper.permissionPermanentlyDenied(deniedPermission);
+    }
+
+    /**
+     * @see EasyPermissions#somePermissionDenied(android.app.Activity, String...)
+     */
+    public boolean somePermissionDenied(@NonNull String... perms) {
+        return mHelper.somePermissionDenied(perms);
+    }
+}
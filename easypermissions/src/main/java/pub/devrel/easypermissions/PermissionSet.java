@@ -0,0 +1,271 @@
+package pub.devrel.easypermissions;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable, deduplicated set of permissions stored as a bitmask over interned permission ids.
+ * <p>
+ * The first 64 ids (which include every platform runtime permission) live in a single {@code
+ * long}, so union, intersection and difference of typical sets are single bitwise operations.
+ * Iteration and {@link #toArray()} use a canonical order that does not depend on how the set was
+ * built.
+ */
+public final class PermissionSet implements Iterable<String> {
+
+    public static final PermissionSet EMPTY = new PermissionSet(0L, null);
+
+    private static final long[] NO_WORDS = new long[0];
+
+    /**
+     * Bits for ids 0..63.
+     */
+    private final long mBits;
+
+    /**
+     * Bits for ids 64 and above, {@code null} when there are none.
+     */
+    @Nullable
+    private final long[] mHighBits;
+
+    private PermissionSet(long bits, @Nullable long[] highBits) {
+        mBits = bits;
+        mHighBits = highBits;
+    }
+
+    /**
+     * Create a set from one or more permissions, such as {@link
+     * android.Manifest.permission#CAMERA}. Duplicates are ignored.
+     */
+    @NonNull
+    public static PermissionSet of(@NonNull String... perms) {
+        long bits = 0L;
+        long[] highBits = NO_WORDS;
+        for (String perm : perms) {
+            int id = PermissionIds.idOf(perm);
+            if (id < 64) {
+                bits |= 1L << id;
+            } else {
+                highBits = setBit(highBits, id - 64);
+            }
+        }
+        return create(bits, highBits);
+    }
+
+    /**
+     * @see #of(String...)
+     */
+    @NonNull
+    public static PermissionSet of(@NonNull Collection<String> perms) {
+        return of(perms.toArray(new String[perms.size()]));
+    }
+
+    /**
+     * @return a set with the permissions of both sets.
+     */
+    @NonNull
+    public PermissionSet union(@NonNull PermissionSet other) {
+        long[] a = words(mHighBits);
+        long[] b = words(other.mHighBits);
+        long[] high = new long[Math.max(a.length, b.length)];
+        for (int i = 0; i < high.length; i++) {
+            high[i] = (i < a.length ? a[i] : 0L) | (i < b.length ? b[i] : 0L);
+        }
+        return create(mBits | other.mBits, high);
+    }
+
+    /**
+     * @return a set with the permissions present in both sets.
+     */
+    @NonNull
+    public PermissionSet intersect(@NonNull PermissionSet other) {
+        long[] a = words(mHighBits);
+        long[] b = words(other.mHighBits);
+        long[] high = new long[Math.min(a.length, b.length)];
+        for (int i = 0; i < high.length; i++) {
+            high[i] = a[i] & b[i];
+        }
+        return create(mBits & other.mBits, high);
+    }
+
+    /**
+     * @return a set with the permissions of this set that are not in {@code other}.
+     */
+    @NonNull
+    public PermissionSet minus(@NonNull PermissionSet other) {
+        long[] a = words(mHighBits);
+        long[] b = words(other.mHighBits);
+        long[] high = new long[a.length];
+        for (int i = 0; i < high.length; i++) {
+            high[i] = a[i] & ~(i < b.length ? b[i] : 0L);
+        }
+        return create(mBits & ~other.mBits, high);
+    }
+
+    public boolean contains(@NonNull String perm) {
+        // A permission without an id can't be in any set
+        int id = PermissionIds.peekId(perm);
+        if (id < 0) {
+            return false;
+        }
+        if (id < 64) {
+            return (mBits & (1L << id)) != 0;
+        }
+        long[] high = words(mHighBits);
+        int word = (id - 64) >>> 6;
+        return word < high.length && (high[word] & (1L << (id - 64))) != 0;
+    }
+
+    public boolean containsAll(@NonNull PermissionSet other) {
+        return other.minus(this).isEmpty();
+    }
+
+    public boolean isEmpty() {
+        return mBits == 0L && mHighBits == null;
+    }
+
+    public int size() {
+        int size = Long.bitCount(mBits);
+        for (long word : words(mHighBits)) {
+            size += Long.bitCount(word);
+        }
+        return size;
+    }
+
+    /**
+     * @return the permissions of this set in canonical order.
+     */
+    @NonNull
+    public String[] toArray() {
+        String[] perms = new String[size()];
+        int i = 0;
+        for (String perm : this) {
+            perms[i++] = perm;
+        }
+        return perms;
+    }
+
+    /**
+     * @return a new, modifiable list of the permissions of this set in canonical order.
+     */
+    @NonNull
+    public List<String> toList() {
+        return new ArrayList<>(Arrays.asList(toArray()));
+    }
+
+    @NonNull
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            private int mNext = nextId(0);
+
+            @Override
+            public boolean hasNext() {
+                return mNext >= 0;
+            }
+
+            @Override
+            public String next() {
+                if (mNext < 0) {
+                    throw new NoSuchElementException();
+                }
+                String perm = PermissionIds.nameOf(mNext);
+                mNext = nextId(mNext + 1);
+                return perm;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("PermissionSet is immutable");
+            }
+        };
+    }
+
+    /**
+     * @return the smallest id in this set that is &gt;= {@code from}, or -1.
+     */
+    private int nextId(int from) {
+        if (from < 64) {
+            long bits = mBits & (-1L << from);
+            if (bits != 0) {
+                return Long.numberOfTrailingZeros(bits);
+            }
+            from = 64;
+        }
+        long[] high = words(mHighBits);
+        int word = (from - 64) >>> 6;
+        if (word >= high.length) {
+            return -1;
+        }
+        long bits = high[word] & (-1L << (from - 64));
+        while (true) {
+            if (bits != 0) {
+                return 64 + word * 64 + Long.numberOfTrailingZeros(bits);
+            }
+            if (++word == high.length) {
+                return -1;
+            }
+            bits = high[word];
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PermissionSet)) {
+            return false;
+        }
+        PermissionSet other = (PermissionSet) o;
+        return mBits == other.mBits && Arrays.equals(mHighBits, other.mHighBits);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (int) (mBits ^ (mBits >>> 32)) + Arrays.hashCode(mHighBits);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+
+    /**
+     * Create a set, trimming trailing empty words so that equal sets have equal fields.
+     */
+    @NonNull
+    private static PermissionSet create(long bits, @NonNull long[] highBits) {
+        int length = highBits.length;
+        while (length > 0 && highBits[length - 1] == 0L) {
+            length--;
+        }
+        if (length == 0) {
+            return bits == 0L ? EMPTY : new PermissionSet(bits, null);
+        }
+        return new PermissionSet(bits,
+                length == highBits.length ? highBits : Arrays.copyOf(highBits, length));
+    }
+
+    @NonNull
+    private static long[] setBit(@NonNull long[] words, int index) {
+        int word = index >>> 6;
+        if (word >= words.length) {
+            words = Arrays.copyOf(words, word + 1);
+        }
+        words[word] |= 1L << index;
+        return words;
+    }
+
+    @NonNull
+    private static long[] words(@Nullable long[] highBits) {
+        return highBits == null ? NO_WORDS : highBits;
+    }
+}
@@ -0,0 +1,113 @@
+package pub.devrel.easypermissions;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.v4.content.ContextCompat;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable grant state of every permission declared in the app's manifest, captured with a
+ * single {@link PackageManager#getPackageInfo(String, int)} call.
+ * <p>
+ * Once captured, {@link #hasPermissions(String...)} answers for any subset of permissions without
+ * further IPC. Permissions that are not declared in the manifest are reported as not granted, just
+ * like the system would.
+ */
+public final class PermissionSnapshot {
+
+    private final Map<String, Boolean> mStates;
+    private final boolean mAllGranted;
+    private final boolean mBulk;
+
+    private PermissionSnapshot(@NonNull Map<String, Boolean> states,
+                               boolean allGranted,
+                               boolean bulk) {
+        mStates = states;
+        mAllGranted = allGranted;
+        mBulk = bulk;
+    }
+
+    /**
+     * Capture the grant state of all permissions requested in the manifest.
+     * <p>
+     * The grant flags of {@link PackageInfo#requestedPermissionsFlags} are used when available,
+     * falling back to one {@link ContextCompat#checkSelfPermission(Context, String)} per
+     * permission otherwise.
+     *
+     * @param context the calling context.
+     */
+    @NonNull
+    public static PermissionSnapshot capture(@NonNull Context context) {
+        // Always granted for SDK < M, same as EasyPermissions#hasPermissions
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            return new PermissionSnapshot(Collections.<String, Boolean>emptyMap(), true, true);
+        }
+
+        PackageInfo info;
+        try {
+            info = context.getPackageManager()
+                    .getPackageInfo(context.getPackageName(), PackageManager.GET_PERMISSIONS);
+        } catch (PackageManager.NameNotFoundException e) {
+            throw new IllegalStateException(
+                    "Can't find own package " + context.getPackageName(), e);
+        }
+
+        String[] perms = info.requestedPermissions;
+        if (perms == null) {
+            return new PermissionSnapshot(Collections.<String, Boolean>emptyMap(), false, true);
+        }
+
+        int[] flags = info.requestedPermissionsFlags;
+        boolean bulk = flags != null && flags.length == perms.length;
+
+        Map<String, Boolean> states = new HashMap<>(perms.length * 2);
+        for (int i = 0; i < perms.length; i++) {
+            boolean granted = bulk
+                    ? (flags[i] & PackageInfo.REQUESTED_PERMISSION_GRANTED) != 0
+                    : ContextCompat.checkSelfPermission(context, perms[i])
+                    == PackageManager.PERMISSION_GRANTED;
+            states.put(perms[i], granted);
+        }
+        return new PermissionSnapshot(Collections.unmodifiableMap(states), false, bulk);
+    }
+
+    /**
+     * Check if a set of permissions was granted when this snapshot was captured.
+     *
+     * @param perms one ore more permissions, such as {@link android.Manifest.permission#CAMERA}.
+     * @return true if all permissions were granted, false if at least one was not.
+     */
+    public boolean hasPermissions(@NonNull String... perms) {
+        for (String perm : perms) {
+            if (!isGranted(perm)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check if a single permission was granted when this snapshot was captured.
+     */
+    public boolean isGranted(@NonNull String perm) {
+        if (mAllGranted) {
+            return true;
+        }
+        Boolean granted = mStates.get(perm);
+        return granted != null && granted;
+    }
+
+    /**
+     * @return {@code true} if the snapshot was captured from the package flags in a single call,
+     * {@code false} if it had to fall back to one check per permission.
+     */
+    public boolean isBulk() {
+        return mBulk;
+    }
+}
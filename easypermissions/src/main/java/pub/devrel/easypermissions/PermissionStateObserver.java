@@ -0,0 +1,373 @@
+package pub.devrel.easypermissions;
+
+import android.app.Activity;
+import android.app.Application;
+import android.os.Build;
+import android.os.Bundle;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.v4.app.Fragment;
+import android.util.Log;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import pub.devrel.easypermissions.helper.PermissionHelper;
+
+/**
+ * Pushes changes of permission grant states to subscribers, instead of every screen checking its
+ * permissions again in {@code onResume()}.
+ * <p>
+ * The last known state of the permissions watched in an Activity is kept. Every time the Activity
+ * resumes, e.g. after the permission dialog or when coming back from the system settings, the
+ * state is captured again with a single {@link PermissionSnapshot} and compared with the previous
+ * one. Subscribers are only called when one of their permissions changed. Whether a denied
+ * permission is permanently denied is only asked again when it may have changed, i.e. for
+ * permissions that were revoked or not permanently denied at the last state.
+ * <p>
+ * Listeners are held weakly, the subscriber must keep a reference to its listener for as long as
+ * it wants to be called. Subscriptions of an Activity are dropped when it is destroyed.
+ * Fragments should still {@link #unsubscribe(Listener)} when they are destroyed, since their
+ * Activity may outlive them.
+ */
+@MainThread
+public final class PermissionStateObserver {
+
+    private static final String TAG = "PermissionStateObserver";
+
+    private static final Map<Activity, HostState> HOSTS = new WeakHashMap<>();
+
+    private static boolean sCallbacksRegistered;
+
+    private PermissionStateObserver() {
+    }
+
+    /**
+     * Listener of permission state changes, see {@link #subscribe(Activity, Listener,
+     * String...)}.
+     */
+    public interface Listener {
+
+        /**
+         * Called on the main thread with the changes of the subscribed permissions only, never
+         * with an empty change.
+         */
+        void onPermissionStateChanged(@NonNull Change change);
+    }
+
+    /**
+     * Difference between two states of the same permissions.
+     */
+    public static final class Change {
+
+        private final PermissionSet mGranted;
+        private final PermissionSet mRevoked;
+        private final PermissionSet mPermanentlyDenied;
+
+        Change(@NonNull PermissionSet granted,
+               @NonNull PermissionSet revoked,
+               @NonNull PermissionSet permanentlyDenied) {
+            mGranted = granted;
+            mRevoked = revoked;
+            mPermanentlyDenied = permanentlyDenied;
+        }
+
+        /**
+         * @return the permissions that were granted since the last state.
+         */
+        @NonNull
+        public PermissionSet getGranted() {
+            return mGranted;
+        }
+
+        /**
+         * @return the permissions that were revoked since the last state, e.g. in the system
+         * settings or because a one-time grant expired.
+         */
+        @NonNull
+        public PermissionSet getRevoked() {
+            return mRevoked;
+        }
+
+        /**
+         * @return the denied permissions that can no longer be requested since the last state,
+         * see {@link EasyPermissions#permissionPermanentlyDenied(Activity, String)}.
+         */
+        @NonNull
+        public PermissionSet getPermanentlyDenied() {
+            return mPermanentlyDenied;
+        }
+
+        public boolean isEmpty() {
+            return mGranted.isEmpty() && mRevoked.isEmpty() && mPermanentlyDenied.isEmpty();
+        }
+
+        @NonNull
+        Change intersect(@NonNull PermissionSet perms) {
+            return new Change(mGranted.intersect(perms), mRevoked.intersect(perms),
+                    mPermanentlyDenied.intersect(perms));
+        }
+
+        @Override
+        public String toString() {
+            return "Change{"
+                    + "mGranted=" + mGranted
+                    + ", mRevoked=" + mRevoked
+                    + ", mPermanentlyDenied=" + mPermanentlyDenied
+                    + '}';
+        }
+    }
+
+    /**
+     * Start observing {@code perms} in {@code host}. The current state becomes the reference for
+     * the first change, the listener is not called with it.
+     */
+    public static void subscribe(@NonNull Activity host,
+                                 @NonNull Listener listener,
+                                 @NonNull String... perms) {
+        registerCallbacks(host);
+
+        HostState state = HOSTS.get(host);
+        if (state == null) {
+            state = new HostState(host);
+            HOSTS.put(host, state);
+        }
+        state.add(listener, PermissionSet.of(perms));
+    }
+
+    /**
+     * @throws IllegalStateException if {@code host} is not attached to an Activity.
+     * @see #subscribe(Activity, Listener, String...)
+     */
+    public static void subscribe(@NonNull Fragment host,
+                                 @NonNull Listener listener,
+                                 @NonNull String... perms) {
+        subscribe(requireActivity(host, host.getActivity()), listener, perms);
+    }
+
+    /**
+     * @throws IllegalStateException if {@code host} is not attached to an Activity.
+     * @see #subscribe(Activity, Listener, String...)
+     */
+    public static void subscribe(@NonNull android.app.Fragment host,
+                                 @NonNull Listener listener,
+                                 @NonNull String... perms) {
+        subscribe(requireActivity(host, host.getActivity()), listener, perms);
+    }
+
+    /**
+     * Stop calling {@code listener}, in every host it was subscribed in.
+     */
+    public static void unsubscribe(@NonNull Listener listener) {
+        for (HostState state : HOSTS.values()) {
+            state.remove(listener);
+        }
+    }
+
+    /**
+     * Compare the permissions watched in {@code host} with their last state now, instead of
+     * waiting for the next time it resumes.
+     */
+    public static void refresh(@NonNull Activity host) {
+        HostState state = HOSTS.get(host);
+        if (state != null) {
+            state.refresh(host);
+        }
+    }
+
+    @NonNull
+    private static Activity requireActivity(@NonNull Object fragment, Activity activity) {
+        if (activity == null) {
+            throw new IllegalStateException("Fragment " + fragment
+                    + " not attached to an Activity, subscribe in onAttach() or later");
+        }
+        return activity;
+    }
+
+    private static void registerCallbacks(@NonNull Activity activity) {
+        if (sCallbacksRegistered) {
+            return;
+        }
+        activity.getApplication().registerActivityLifecycleCallbacks(new LifecycleCallbacks());
+        sCallbacksRegistered = true;
+    }
+
+    /**
+     * Subscriptions and last known state of one Activity.
+     */
+    private static class HostState {
+
+        private final List<WeakReference<Listener>> mListeners = new ArrayList<>();
+        private final List<PermissionSet> mListenerPerms = new ArrayList<>();
+
+        /**
+         * Union of the permissions of all listeners.
+         */
+        private PermissionSet mWatched = PermissionSet.EMPTY;
+        private PermissionSet mGranted = PermissionSet.EMPTY;
+        private PermissionSet mPermanentlyDenied = PermissionSet.EMPTY;
+
+        private final PermissionHelper mHelper;
+
+        HostState(@NonNull Activity host) {
+            mHelper = PermissionHelper.getInstance(host);
+        }
+
+        void add(@NonNull Listener listener, @NonNull PermissionSet perms) {
+            mListeners.add(new WeakReference<>(listener));
+            mListenerPerms.add(perms);
+
+            PermissionSet added = perms.minus(mWatched);
+            if (added.isEmpty()) {
+                return;
+            }
+            // Only the new permissions get a reference state, pending changes of the others are
+            // still reported on the next refresh
+            PermissionSet granted = captureGranted(added);
+            mGranted = mGranted.union(granted);
+            mPermanentlyDenied = mPermanentlyDenied.union(
+                    checkPermanentlyDenied(added.minus(granted)));
+            mWatched = mWatched.union(added);
+        }
+
+        void remove(@NonNull Listener listener) {
+            removeListeners(listener);
+        }
+
+        /**
+         * Remove {@code listener} and the collected listeners, {@code null} to only remove the
+         * collected ones.
+         */
+        private void removeListeners(Listener listener) {
+            boolean removed = false;
+            for (int i = mListeners.size() - 1; i >= 0; i--) {
+                Listener registered = mListeners.get(i).get();
+                if (registered == null || registered == listener) {
+                    mListeners.remove(i);
+                    mListenerPerms.remove(i);
+                    removed = true;
+                }
+            }
+            if (!removed) {
+                return;
+            }
+
+            PermissionSet watched = PermissionSet.EMPTY;
+            for (PermissionSet perms : mListenerPerms) {
+                watched = watched.union(perms);
+            }
+            mWatched = watched;
+            mGranted = mGranted.intersect(watched);
+            mPermanentlyDenied = mPermanentlyDenied.intersect(watched);
+        }
+
+        void refresh(@NonNull Activity host) {
+            removeListeners(null);
+            if (mWatched.isEmpty()) {
+                return;
+            }
+
+            PermissionSet granted = captureGranted(mWatched);
+            // A permission still denied and already permanently denied stays so, only the
+            // revoked ones and those that could still be requested need to be asked again
+            PermissionSet denied = mWatched.minus(granted);
+            PermissionSet stillPermanentlyDenied = mPermanentlyDenied.intersect(denied);
+            PermissionSet permanentlyDenied = stillPermanentlyDenied.union(
+                    checkPermanentlyDenied(denied.minus(stillPermanentlyDenied)));
+            Change change = new Change(granted.minus(mGranted), mGranted.minus(granted),
+                    permanentlyDenied.minus(mPermanentlyDenied));
+            mGranted = granted;
+            mPermanentlyDenied = permanentlyDenied;
+            if (change.isEmpty()) {
+                return;
+            }
+
+            if (PermissionLog.isLoggable(Log.DEBUG)) {
+                PermissionLog.d(TAG, "Permission state of " + host.getClass().getSimpleName()
+                        + " changed: " + change);
+            }
+            // Copied, listeners may unsubscribe while being called
+            int count = mListeners.size();
+            Listener[] listeners = new Listener[count];
+            for (int i = 0; i < count; i++) {
+                listeners[i] = mListeners.get(i).get();
+            }
+            PermissionSet[] listenerPerms = mListenerPerms.toArray(new PermissionSet[count]);
+            for (int i = 0; i < count; i++) {
+                if (listeners[i] == null) {
+                    continue;
+                }
+                Change listenerChange = change.intersect(listenerPerms[i]);
+                if (!listenerChange.isEmpty()) {
+                    listeners[i].onPermissionStateChanged(listenerChange);
+                }
+            }
+        }
+
+        @NonNull
+        private PermissionSet captureGranted(@NonNull PermissionSet perms) {
+            // Always granted for SDK < M, same as EasyPermissions#hasPermissions
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+                return perms;
+            }
+            PermissionSnapshot snapshot = PermissionSnapshot.capture(mHelper.getContext());
+            List<String> granted = new ArrayList<>(perms.size());
+            for (String perm : perms) {
+                if (snapshot.isGranted(perm)) {
+                    granted.add(perm);
+                }
+            }
+            return PermissionSet.of(granted);
+        }
+
+        @NonNull
+        private PermissionSet checkPermanentlyDenied(@NonNull PermissionSet denied) {
+            if (denied.isEmpty() || Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+                return PermissionSet.EMPTY;
+            }
+            List<String> permanentlyDenied = new ArrayList<>(denied.size());
+            for (String perm : denied) {
+                if (mHelper.permissionPermanentlyDenied(perm)) {
+                    permanentlyDenied.add(perm);
+                }
+            }
+            return PermissionSet.of(permanentlyDenied);
+        }
+    }
+
+    private static class LifecycleCallbacks implements Application.ActivityLifecycleCallbacks {
+
+        @Override
+        public void onActivityResumed(Activity activity) {
+            refresh(activity);
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+            HOSTS.remove(activity);
+        }
+
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityStarted(Activity activity) {
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package pub.devrel.easypermissions;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.RestrictTo;
+import android.support.v4.os.TraceCompat;
+
+/**
+ * Trace sections around the library's hot paths, so that its work shows up in systrace and
+ * Perfetto captures.
+ * <p>
+ * Sections go to {@link android.os.Trace} by default, which is a no-op unless the app is being
+ * traced. Section names are constants so that nothing is allocated either way. Tests can capture
+ * the same sections with {@link #setSink(Sink)}, or disable tracing with {@code setSink(null)}.
+ */
+public final class PermissionTrace {
+
+    /**
+     * Receives the sections of the library. Sections are strictly nested per thread.
+     */
+    public interface Sink {
+
+        void beginSection(@NonNull String sectionName);
+
+        void endSection();
+
+    }
+
+    @RestrictTo(RestrictTo.Scope.LIBRARY)
+    public static final String HAS_PERMISSIONS = "EasyPermissions.hasPermissions";
+    @RestrictTo(RestrictTo.Scope.LIBRARY)
+    public static final String ON_REQUEST_PERMISSIONS_RESULT =
+            "EasyPermissions.onRequestPermissionsResult";
+    @RestrictTo(RestrictTo.Scope.LIBRARY)
+    public static final String RUN_ANNOTATED_METHODS = "EasyPermissions.runAnnotatedMethods";
+    @RestrictTo(RestrictTo.Scope.LIBRARY)
+    public static final String CREATE_HELPER = "PermissionHelper.create";
+    @RestrictTo(RestrictTo.Scope.LIBRARY)
+    public static final String CREATE_RATIONALE_DIALOG = "RationaleDialogConfig.createDialog";
+    @RestrictTo(RestrictTo.Scope.LIBRARY)
+    public static final String SHOW_APP_SETTINGS_DIALOG = "AppSettingsDialog.show";
+
+    private static final Sink PLATFORM_SINK = new Sink() {
+        @Override
+        public void beginSection(@NonNull String sectionName) {
+            TraceCompat.beginSection(sectionName);
+        }
+
+        @Override
+        public void endSection() {
+            TraceCompat.endSection();
+        }
+    };
+
+    @Nullable
+    private static volatile Sink sSink = PLATFORM_SINK;
+
+    private PermissionTrace() {
+    }
+
+    /**
+     * Send sections to {@code sink} instead of {@link android.os.Trace}, {@code null} to drop
+     * them. Must not be called while a section is open.
+     */
+    public static void setSink(@Nullable Sink sink) {
+        sSink = sink;
+    }
+
+    /**
+     * Send sections to {@link android.os.Trace} again.
+     */
+    public static void resetSink() {
+        sSink = PLATFORM_SINK;
+    }
+
+    @RestrictTo(RestrictTo.Scope.LIBRARY)
+    public static void beginSection(@NonNull String sectionName) {
+        Sink sink = sSink;
+        if (sink != null) {
+            sink.beginSection(sectionName);
+        }
+    }
+
+    @RestrictTo(RestrictTo.Scope.LIBRARY)
+    public static void endSection() {
+        Sink sink = sSink;
+        if (sink != null) {
+            sink.endSection();
+        }
+    }
+}
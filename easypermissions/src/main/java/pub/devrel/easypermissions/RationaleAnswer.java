@@ -0,0 +1,49 @@
+package pub.devrel.easypermissions;
+
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * {@link RationaleRenderer.Callback} of a single request, the equivalent of {@link
+ * RationaleDialogClickListener} for renderers that are not dialog fragments.
+ */
+class RationaleAnswer implements RationaleRenderer.Callback {
+
+    private final PermissionRequest mRequest;
+    private boolean mAnswered;
+
+    RationaleAnswer(@NonNull PermissionRequest request) {
+        mRequest = request;
+    }
+
+    @Override
+    public void onRationaleAccepted() {
+        if (answer(true)) {
+            mRequest.getHelper().submitRequestPermissions(mRequest.getRequestCode(),
+                    mRequest.getPriority(), mRequest.getPerms());
+        }
+    }
+
+    @Override
+    public void onRationaleDeclined() {
+        if (answer(false) && !PendingCallbacks.deliverDenied(mRequest.getRequestCode(),
+                mRequest.getPerms())) {
+            Object host = mRequest.getHelper().getHost();
+            if (host instanceof EasyPermissions.PermissionCallbacks) {
+                ((EasyPermissions.PermissionCallbacks) host).onPermissionsDenied(
+                        mRequest.getRequestCode(), Arrays.asList(mRequest.getPerms()));
+            }
+        }
+    }
+
+    private boolean answer(boolean accepted) {
+        if (mAnswered) {
+            return false;
+        }
+        mAnswered = true;
+        PermissionMetrics.onRationaleAnswered(mRequest.getHelper().getContext(),
+                mRequest.getRequestCode(), mRequest.getPerms().length, accepted);
+        return true;
+    }
+}
@@ -49,16 +49,18 @@ class RationaleDialogClickListener implements Dialog.OnClickListener {
 
     @Override
     public void onClick(DialogInterface dialog, int which) {
+        PermissionMetrics.onRationaleAnswered(PermissionMetrics.contextOf(mHost),
+                mConfig.requestCode, mConfig.permissions.length, which == Dialog.BUTTON_POSITIVE);
         if (which == Dialog.BUTTON_POSITIVE) {
             if (mHost instanceof Fragment) {
-                PermissionHelper.newInstance((Fragment) mHost).directRequestPermissions(
-                        mConfig.requestCode, mConfig.permissions);
+                PermissionHelper.getInstance((Fragment) mHost).submitRequestPermissions(
+                        mConfig.requestCode, mConfig.priority, mConfig.permissions);
             } else if (mHost instanceof android.app.Fragment) {
-                PermissionHelper.newInstance((android.app.Fragment) mHost).directRequestPermissions(
-                        mConfig.requestCode, mConfig.permissions);
+                PermissionHelper.getInstance((android.app.Fragment) mHost).submitRequestPermissions(
+                        mConfig.requestCode, mConfig.priority, mConfig.permissions);
             } else if (mHost instanceof Activity) {
-                PermissionHelper.newInstance((Activity) mHost).directRequestPermissions(
-                        mConfig.requestCode, mConfig.permissions);
+                PermissionHelper.getInstance((Activity) mHost).submitRequestPermissions(
+                        mConfig.requestCode, mConfig.priority, mConfig.permissions);
             } else {
                 throw new RuntimeException("Host must be an Activity or Fragment!");
             }
@@ -68,6 +70,9 @@ class RationaleDialogClickListener implements Dialog.OnClickListener {
     }
 
     private void notifyPermissionDenied() {
+        if (PendingCallbacks.deliverDenied(mConfig.requestCode, mConfig.permissions)) {
+            return;
+        }
         if (mCallbacks != null) {
             mCallbacks.onPermissionsDenied(mConfig.requestCode,
                     Arrays.asList(mConfig.permissions));
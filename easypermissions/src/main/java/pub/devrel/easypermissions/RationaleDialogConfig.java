@@ -16,60 +16,101 @@ class RationaleDialogConfig {
     private static final String KEY_NEGATIVE_BUTTON = "negativeButton";
     private static final String KEY_RATIONALE_MESSAGE = "rationaleMsg";
     private static final String KEY_REQUEST_CODE = "requestCode";
+    private static final String KEY_PRIORITY = "priority";
     private static final String KEY_PERMISSIONS = "permissions";
+    private static final String KEY_PERMISSION_IDS = "permissionIds";
 
     int positiveButton;
     int negativeButton;
     int requestCode;
-    String rationaleMsg;
+    int priority;
+    TextResource rationaleMsg;
     String[] permissions;
 
     RationaleDialogConfig(@StringRes int positiveButton, @StringRes int negativeButton,
-                          @NonNull String rationaleMsg, int requestCode,
+                          @NonNull String rationaleMsg, int requestCode, int priority,
+                          @NonNull String[] permissions) {
+        this(positiveButton, negativeButton, TextResource.of(rationaleMsg), requestCode, priority,
+                permissions);
+    }
+
+    RationaleDialogConfig(@StringRes int positiveButton, @StringRes int negativeButton,
+                          @NonNull TextResource rationaleMsg, int requestCode, int priority,
                           @NonNull String[] permissions) {
 
         this.positiveButton = positiveButton;
         this.negativeButton = negativeButton;
         this.rationaleMsg = rationaleMsg;
         this.requestCode = requestCode;
+        this.priority = priority;
         this.permissions = permissions;
     }
 
     RationaleDialogConfig(Bundle bundle) {
         positiveButton = bundle.getInt(KEY_POSITIVE_BUTTON);
         negativeButton = bundle.getInt(KEY_NEGATIVE_BUTTON);
-        rationaleMsg = bundle.getString(KEY_RATIONALE_MESSAGE);
+        rationaleMsg = TextResource.readFromBundle(bundle, KEY_RATIONALE_MESSAGE);
         requestCode = bundle.getInt(KEY_REQUEST_CODE);
-        permissions = bundle.getStringArray(KEY_PERMISSIONS);
+        priority = bundle.getInt(KEY_PRIORITY);
+        int[] permissionIds = bundle.getIntArray(KEY_PERMISSION_IDS);
+        if (permissionIds != null) {
+            permissions = new String[permissionIds.length];
+            for (int i = 0; i < permissionIds.length; i++) {
+                permissions[i] = PermissionIds.nameOf(permissionIds[i]);
+            }
+        } else {
+            permissions = bundle.getStringArray(KEY_PERMISSIONS);
+        }
     }
 
     Bundle toBundle() {
         Bundle bundle = new Bundle();
         bundle.putInt(KEY_POSITIVE_BUTTON, positiveButton);
         bundle.putInt(KEY_NEGATIVE_BUTTON, negativeButton);
-        bundle.putString(KEY_RATIONALE_MESSAGE, rationaleMsg);
+        // A resource is stored as its id and resolved when the dialog is created, in the current
+        // locale
+        rationaleMsg.writeToBundle(bundle, KEY_RATIONALE_MESSAGE);
         bundle.putInt(KEY_REQUEST_CODE, requestCode);
-        bundle.putStringArray(KEY_PERMISSIONS, permissions);
+        bundle.putInt(KEY_PRIORITY, priority);
+        // Platform permissions are stored as ids, in the order of the request and with its
+        // duplicates. Anything else needs the full names since dynamically interned ids do not
+        // survive process death
+        int[] permissionIds = PermissionIds.wellKnownIdsOf(permissions);
+        if (permissionIds != null) {
+            bundle.putIntArray(KEY_PERMISSION_IDS, permissionIds);
+        } else {
+            bundle.putStringArray(KEY_PERMISSIONS, permissions);
+        }
 
         return bundle;
     }
 
     AlertDialog createSupportDialog(Context context, Dialog.OnClickListener listener) {
-        return new AlertDialog.Builder(context)
-                .setCancelable(false)
-                .setPositiveButton(positiveButton, listener)
-                .setNegativeButton(negativeButton, listener)
-                .setMessage(rationaleMsg)
-                .create();
+        PermissionTrace.beginSection(PermissionTrace.CREATE_RATIONALE_DIALOG);
+        try {
+            return new AlertDialog.Builder(context)
+                    .setCancelable(false)
+                    .setPositiveButton(positiveButton, listener)
+                    .setNegativeButton(negativeButton, listener)
+                    .setMessage(rationaleMsg.resolve(context))
+                    .create();
+        } finally {
+            PermissionTrace.endSection();
+        }
     }
 
     android.app.AlertDialog createFrameworkDialog(Context context, Dialog.OnClickListener listener) {
-        return new android.app.AlertDialog.Builder(context)
-                .setCancelable(false)
-                .setPositiveButton(positiveButton, listener)
-                .setNegativeButton(negativeButton, listener)
-                .setMessage(rationaleMsg)
-                .create();
+        PermissionTrace.beginSection(PermissionTrace.CREATE_RATIONALE_DIALOG);
+        try {
+            return new android.app.AlertDialog.Builder(context)
+                    .setCancelable(false)
+                    .setPositiveButton(positiveButton, listener)
+                    .setNegativeButton(negativeButton, listener)
+                    .setMessage(rationaleMsg.resolve(context))
+                    .create();
+        } finally {
+            PermissionTrace.endSection();
+        }
     }
 
 }
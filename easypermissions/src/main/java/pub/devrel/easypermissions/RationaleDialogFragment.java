@@ -23,18 +23,35 @@ public class RationaleDialogFragment extends DialogFragment {
     public static RationaleDialogFragment newInstance(
             @StringRes int positiveButton, @StringRes int negativeButton,
             @NonNull String rationaleMsg, int requestCode, @NonNull String[] permissions) {
+        return newInstance(positiveButton, negativeButton, rationaleMsg, requestCode,
+                PermissionRequest.PRIORITY_NORMAL, permissions);
+    }
+
+    public static RationaleDialogFragment newInstance(
+            @StringRes int positiveButton, @StringRes int negativeButton,
+            @NonNull String rationaleMsg, int requestCode, int priority,
+            @NonNull String[] permissions) {
 
         // Create new Fragment
         RationaleDialogFragment dialogFragment = new RationaleDialogFragment();
 
         // Initialize configuration as arguments
         RationaleDialogConfig config = new RationaleDialogConfig(
-                positiveButton, negativeButton, rationaleMsg, requestCode, permissions);
+                positiveButton, negativeButton, rationaleMsg, requestCode, priority, permissions);
         dialogFragment.setArguments(config.toBundle());
 
         return dialogFragment;
     }
 
+    /**
+     * @param arguments a {@link RationaleDialogConfig} Bundle.
+     */
+    public static RationaleDialogFragment newInstance(@NonNull Bundle arguments) {
+        RationaleDialogFragment dialogFragment = new RationaleDialogFragment();
+        dialogFragment.setArguments(arguments);
+        return dialogFragment;
+    }
+
     @Override
     public void onAttach(Context context) {
         super.onAttach(context);
@@ -22,18 +22,35 @@ public class RationaleDialogFragmentCompat extends AppCompatDialogFragment {
     public static RationaleDialogFragmentCompat newInstance(
             @StringRes int positiveButton, @StringRes int negativeButton,
             @NonNull String rationaleMsg, int requestCode, @NonNull String[] permissions) {
+        return newInstance(positiveButton, negativeButton, rationaleMsg, requestCode,
+                PermissionRequest.PRIORITY_NORMAL, permissions);
+    }
+
+    public static RationaleDialogFragmentCompat newInstance(
+            @StringRes int positiveButton, @StringRes int negativeButton,
+            @NonNull String rationaleMsg, int requestCode, int priority,
+            @NonNull String[] permissions) {
 
         // Create new Fragment
         RationaleDialogFragmentCompat dialogFragment = new RationaleDialogFragmentCompat();
 
         // Initialize configuration as arguments
         RationaleDialogConfig config = new RationaleDialogConfig(
-                positiveButton, negativeButton, rationaleMsg, requestCode, permissions);
+                positiveButton, negativeButton, rationaleMsg, requestCode, priority, permissions);
         dialogFragment.setArguments(config.toBundle());
 
         return dialogFragment;
     }
 
+    /**
+     * @param arguments a {@link RationaleDialogConfig} Bundle.
+     */
+    public static RationaleDialogFragmentCompat newInstance(@NonNull Bundle arguments) {
+        RationaleDialogFragmentCompat dialogFragment = new RationaleDialogFragmentCompat();
+        dialogFragment.setArguments(arguments);
+        return dialogFragment;
+    }
+
     @Override
     public void onAttach(Context context) {
         super.onAttach(context);
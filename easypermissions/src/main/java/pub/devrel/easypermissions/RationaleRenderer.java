@@ -0,0 +1,36 @@
+package pub.devrel.easypermissions;
+
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+
+/**
+ * Shows the rationale of a {@link PermissionRequest} when the system asks for one.
+ * <p>
+ * Set per request with {@link PermissionRequest.Builder#setRationaleRenderer(RationaleRenderer)},
+ * or for all requests with {@link EasyPermissions#setDefaultRationaleRenderer(RationaleRenderer)}.
+ * See {@link RationaleRenderers} for the built-in renderers.
+ */
+public interface RationaleRenderer {
+
+    /**
+     * Outcome of a rationale, to be reported exactly once.
+     */
+    interface Callback {
+
+        /**
+         * The user wants to continue, the system request is made.
+         */
+        void onRationaleAccepted();
+
+        /**
+         * The user does not want to continue, the host is notified that the permissions were
+         * denied.
+         */
+        void onRationaleDeclined();
+
+    }
+
+    @MainThread
+    void showRationale(@NonNull PermissionRequest request, @NonNull Callback callback);
+
+}
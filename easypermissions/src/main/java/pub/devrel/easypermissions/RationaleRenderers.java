@@ -0,0 +1,77 @@
+package pub.devrel.easypermissions;
+
+import android.app.Dialog;
+import android.content.Context;
+import android.content.DialogInterface;
+import android.support.annotation.NonNull;
+import android.support.v7.app.AppCompatActivity;
+
+import pub.devrel.easypermissions.helper.PermissionHelper;
+
+/**
+ * Built-in {@link RationaleRenderer}s.
+ */
+public final class RationaleRenderers {
+
+    /**
+     * Shows the rationale in a {@link RationaleDialogFragmentCompat} or {@link
+     * RationaleDialogFragment}, which survives configuration changes. Falls back to {@link
+     * #DIALOG} once the host has saved its state, when a fragment can no longer be added. This is
+     * the default.
+     */
+    public static final RationaleRenderer FRAGMENT = new RationaleRenderer() {
+        @Override
+        public void showRationale(@NonNull PermissionRequest request,
+                                  @NonNull Callback callback) {
+            PermissionHelper helper = request.getHelper();
+            if (!helper.canShowRationaleFragment()) {
+                DIALOG.showRationale(request, callback);
+                return;
+            }
+            helper.showRationaleDialog(request.toRationaleDialogConfig().toBundle());
+        }
+    };
+
+    /**
+     * Shows the rationale in a plain dialog attached to the host's Activity, without a fragment
+     * transaction or argument Bundle. The dialog is dismissed, and the request dropped, if the
+     * Activity is recreated.
+     */
+    public static final RationaleRenderer DIALOG = new RationaleRenderer() {
+        @Override
+        public void showRationale(@NonNull PermissionRequest request,
+                                  @NonNull final Callback callback) {
+            Context context = request.getHelper().getContext();
+            RationaleDialogConfig config = request.toRationaleDialogConfig();
+            DialogInterface.OnClickListener listener = new DialogInterface.OnClickListener() {
+                @Override
+                public void onClick(DialogInterface dialog, int which) {
+                    if (which == Dialog.BUTTON_POSITIVE) {
+                        callback.onRationaleAccepted();
+                    } else {
+                        callback.onRationaleDeclined();
+                    }
+                }
+            };
+
+            Dialog dialog = context instanceof AppCompatActivity
+                    ? config.createSupportDialog(context, listener)
+                    : config.createFrameworkDialog(context, listener);
+            dialog.show();
+        }
+    };
+
+    private static volatile RationaleRenderer sDefault = FRAGMENT;
+
+    private RationaleRenderers() {
+    }
+
+    static void setDefault(@NonNull RationaleRenderer renderer) {
+        sDefault = renderer;
+    }
+
+    @NonNull
+    static RationaleRenderer getDefault() {
+        return sDefault;
+    }
+}
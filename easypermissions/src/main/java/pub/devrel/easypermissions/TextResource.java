@@ -0,0 +1,135 @@
+package pub.devrel.easypermissions;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Parcel;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.StringRes;
+
+/**
+ * Text of a dialog, either a literal or a string resource with optional format arguments.
+ * <p>
+ * Resources are only resolved when the dialog is created, with the dialog's context, so that the
+ * current locale is used, and they are stored as an id instead of the full text.
+ * <p>
+ * Format arguments are kept in saved state, in a {@link Parcel} or a {@link Bundle}, so they are
+ * limited to {@link String}, boxed primitives and {@code null}. Any other {@link CharSequence},
+ * such as a {@code Spanned}, is stored as its {@code toString()}, which is what formatting it
+ * with {@code %s} uses anyway.
+ */
+final class TextResource {
+
+    private static final String KEY_RES_ID = "ResId";
+    private static final String KEY_FORMAT_ARGS = "FormatArgs";
+
+    @Nullable
+    private final String mText;
+    @StringRes
+    private final int mResId;
+    @Nullable
+    private final Object[] mFormatArgs;
+
+    private TextResource(@Nullable String text,
+                         @StringRes int resId,
+                         @Nullable Object[] formatArgs) {
+        mText = text;
+        mResId = resId;
+        mFormatArgs = formatArgs != null && formatArgs.length > 0 ? checkArgs(formatArgs) : null;
+    }
+
+    /**
+     * @throws IllegalArgumentException if an argument can't be kept in saved state.
+     */
+    @NonNull
+    private static Object[] checkArgs(@NonNull Object[] formatArgs) {
+        Object[] args = formatArgs.clone();
+        for (int i = 0; i < args.length; i++) {
+            Object arg = args[i];
+            if (isSupported(arg)) {
+                continue;
+            }
+            if (arg instanceof CharSequence) {
+                args[i] = arg.toString();
+                continue;
+            }
+            throw new IllegalArgumentException("Unsupported format argument " + arg
+                    + ", only strings and boxed primitives can be kept in saved state");
+        }
+        return args;
+    }
+
+    private static boolean isSupported(@Nullable Object arg) {
+        return arg == null
+                || arg instanceof String
+                || arg instanceof Boolean
+                || arg instanceof Character
+                // Boxed primitives only, not e.g. BigDecimal
+                || arg instanceof Number && arg.getClass().getName().startsWith("java.lang.");
+    }
+
+    @NonNull
+    static TextResource of(@Nullable String text) {
+        return new TextResource(text, 0, null);
+    }
+
+    @NonNull
+    static TextResource of(@StringRes int resId, @Nullable Object... formatArgs) {
+        return new TextResource(null, resId, formatArgs);
+    }
+
+    /**
+     * @return {@code true} if there is neither a resource nor a non-empty literal.
+     */
+    boolean isEmpty() {
+        return mResId == 0 && (mText == null || mText.length() == 0);
+    }
+
+    @Nullable
+    String resolve(@NonNull Context context) {
+        if (mResId == 0) {
+            return mText;
+        }
+        return mFormatArgs != null
+                ? context.getString(mResId, mFormatArgs)
+                : context.getString(mResId);
+    }
+
+    void writeToParcel(@NonNull Parcel dest) {
+        dest.writeInt(mResId);
+        if (mResId == 0) {
+            dest.writeString(mText);
+        } else {
+            dest.writeArray(mFormatArgs);
+        }
+    }
+
+    @NonNull
+    static TextResource readFromParcel(@NonNull Parcel in) {
+        int resId = in.readInt();
+        if (resId == 0) {
+            return of(in.readString());
+        }
+        return of(resId, in.readArray(TextResource.class.getClassLoader()));
+    }
+
+    void writeToBundle(@NonNull Bundle bundle, @NonNull String key) {
+        if (mResId == 0) {
+            bundle.putString(key, mText);
+        } else {
+            bundle.putInt(key + KEY_RES_ID, mResId);
+            if (mFormatArgs != null) {
+                bundle.putSerializable(key + KEY_FORMAT_ARGS, mFormatArgs);
+            }
+        }
+    }
+
+    @NonNull
+    static TextResource readFromBundle(@NonNull Bundle bundle, @NonNull String key) {
+        int resId = bundle.getInt(key + KEY_RES_ID, 0);
+        if (resId == 0) {
+            return of(bundle.getString(key));
+        }
+        return of(resId, (Object[]) bundle.getSerializable(key + KEY_FORMAT_ARGS));
+    }
+}
@@ -7,11 +7,15 @@ import android.support.v4.app.FragmentManager;
 import android.support.v7.app.AppCompatActivity;
 import android.util.Log;
 
+import pub.devrel.easypermissions.PermissionLog;
+
 /**
  * Permissions helper for {@link AppCompatActivity}.
  */
 class AppCompatActivityPermissionHelper extends BaseSupportPermissionsHelper<AppCompatActivity> {
 
+    private static final String TAG = "PermissionHelper";
+
     public AppCompatActivityPermissionHelper(AppCompatActivity host) {
         super(host);
     }
@@ -36,8 +40,9 @@ class AppCompatActivityPermissionHelper extends BaseSupportPermissionsHelper<App
     @Override
     public boolean shouldShowRequestPermissionRationale(@NonNull String perm) {
         boolean flag = ActivityCompat.shouldShowRequestPermissionRationale(getHost(), perm);
-        Log.e("xiaxl: ","---shouldShowRequestPermissionRationale---");
-        Log.e("xiaxl: ","flag: "+flag);
+        if (PermissionLog.isLoggable(Log.DEBUG)) {
+            PermissionLog.d(TAG, "shouldShowRequestPermissionRationale " + perm + ": " + flag);
+        }
         // 是否应该给出原因：为什么请求该perm权限
         return flag;
     }
@@ -1,6 +1,10 @@
 package pub.devrel.easypermissions.helper;
 
+import android.app.Activity;
 import android.app.FragmentManager;
+import android.content.Context;
+import android.os.Build;
+import android.os.Bundle;
 import android.support.annotation.NonNull;
 
 import pub.devrel.easypermissions.RationaleDialogFragment;
@@ -16,14 +20,44 @@ public abstract class BaseFrameworkPermissionsHelper<T> extends PermissionHelper
 
     public abstract FragmentManager getFragmentManager();
 
+    @Override
+    public boolean canShowRationaleFragment() {
+        // Saved state can only be queried from API 26
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.O
+                || !getFragmentManager().isStateSaved();
+    }
+
     @Override
     public void showRequestPermissionRationale(@NonNull String rationale,
                                                int positiveButton,
                                                int negativeButton,
                                                int requestCode,
+                                               int priority,
                                                @NonNull String... perms) {
         RationaleDialogFragment
-                .newInstance(positiveButton, negativeButton, rationale, requestCode, perms)
+                .newInstance(positiveButton, negativeButton, rationale, requestCode, priority,
+                        perms)
+                .show(getFragmentManager(), RationaleDialogFragment.TAG);
+    }
+
+    @Override
+    public void showRationaleDialog(@NonNull Bundle arguments) {
+        RationaleDialogFragment.newInstance(arguments)
                 .show(getFragmentManager(), RationaleDialogFragment.TAG);
     }
+
+    @Override
+    boolean routeRequestPermissions(int requestCode, @NonNull String[] perms) {
+        // Fragments throw on request codes above 0xFF, leave those to the host
+        Context context = getContext();
+        if (!PermissionResultRouter.canRoute(requestCode) || !(context instanceof Activity)) {
+            return false;
+        }
+        FrameworkRoutingFragment router = FrameworkRoutingFragment.attach((Activity) context);
+        if (router == null) {
+            return false;
+        }
+        router.requestPermissions(getHost(), requestCode, perms);
+        return true;
+    }
 }
@@ -1,6 +1,9 @@
 package pub.devrel.easypermissions.helper;
 
+import android.content.Context;
+import android.os.Bundle;
 import android.support.annotation.NonNull;
+import android.support.v4.app.FragmentActivity;
 import android.support.v4.app.FragmentManager;
 
 import pub.devrel.easypermissions.RationaleDialogFragmentCompat;
@@ -16,6 +19,11 @@ public abstract class BaseSupportPermissionsHelper<T> extends PermissionHelper<T
 
     public abstract FragmentManager getSupportFragmentManager();
 
+    @Override
+    public boolean canShowRationaleFragment() {
+        return !getSupportFragmentManager().isStateSaved();
+    }
+
     /**
      * 申请权限 原因 弹窗
      *
@@ -23,6 +31,7 @@ public abstract class BaseSupportPermissionsHelper<T> extends PermissionHelper<T
      * @param positiveButton
      * @param negativeButton
      * @param requestCode
+     * @param priority
      * @param perms
      */
     @Override
@@ -30,10 +39,34 @@ public abstract class BaseSupportPermissionsHelper<T> extends PermissionHelper<T
                                                int positiveButton,
                                                int negativeButton,
                                                int requestCode,
+                                               int priority,
                                                @NonNull String... perms) {
         // 申请 权限 原因的弹窗
         RationaleDialogFragmentCompat
-                .newInstance(positiveButton, negativeButton, rationale, requestCode, perms)
+                .newInstance(positiveButton, negativeButton, rationale, requestCode, priority,
+                        perms)
+                .show(getSupportFragmentManager(), RationaleDialogFragmentCompat.TAG);
+    }
+
+    @Override
+    public void showRationaleDialog(@NonNull Bundle arguments) {
+        RationaleDialogFragmentCompat.newInstance(arguments)
                 .show(getSupportFragmentManager(), RationaleDialogFragmentCompat.TAG);
     }
+
+    @Override
+    boolean routeRequestPermissions(int requestCode, @NonNull String[] perms) {
+        // Fragments throw on request codes above 0xFF, leave those to the host
+        Context context = getContext();
+        if (!PermissionResultRouter.canRoute(requestCode)
+                || !(context instanceof FragmentActivity)) {
+            return false;
+        }
+        SupportRoutingFragment router = SupportRoutingFragment.attach((FragmentActivity) context);
+        if (router == null) {
+            return false;
+        }
+        router.requestPermissions(getHost(), requestCode, perms);
+        return true;
+    }
 }
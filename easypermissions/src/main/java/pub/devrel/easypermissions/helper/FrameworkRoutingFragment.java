@@ -0,0 +1,118 @@
+package pub.devrel.easypermissions.helper;
+
+import android.annotation.SuppressLint;
+import android.app.Activity;
+import android.app.Fragment;
+import android.app.FragmentManager;
+import android.os.Build;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.RestrictTo;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Headless, retained fragment that issues the permission requests of an {@link Activity} and its
+ * framework Fragments, see {@link PermissionResultRouter}.
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY)
+public class FrameworkRoutingFragment extends Fragment {
+
+    public static final String TAG = "EasyPermissionsRoutingFragment";
+
+    /**
+     * Routing fragments committed but not attached yet, which can't be found by tag.
+     */
+    private static final Map<Activity, FrameworkRoutingFragment> ADDING = new WeakHashMap<>();
+
+    private final PermissionResultRouter.PendingOriginators mPending =
+            new PermissionResultRouter.PendingOriginators();
+
+    /**
+     * Find the attached routing fragment of {@code activity}, adding it for later requests if
+     * needed. The fragment is never added synchronously, the FragmentManager may be executing
+     * transactions.
+     *
+     * @return {@code null} if the fragment is not attached yet.
+     */
+    @Nullable
+    static FrameworkRoutingFragment attach(@NonNull Activity activity) {
+        PermissionResultRouter.registerCallbacks(activity);
+        FrameworkRoutingFragment fragment =
+                (FrameworkRoutingFragment) activity.getFragmentManager().findFragmentByTag(TAG);
+        if (fragment == null) {
+            add(activity);
+            return null;
+        }
+        return fragment.isAdded() ? fragment : null;
+    }
+
+    /**
+     * Add the routing fragment of {@code activity} if it has none, unless it saved its state.
+     */
+    static void add(@NonNull Activity activity) {
+        FragmentManager fm = activity.getFragmentManager();
+        if (ADDING.containsKey(activity) || fm.findFragmentByTag(TAG) != null) {
+            return;
+        }
+        // Saved state can only be queried from API 26, the commit is allowed to be lost before
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && fm.isStateSaved()) {
+            return;
+        }
+        FrameworkRoutingFragment fragment = new FrameworkRoutingFragment();
+        ADDING.put(activity, fragment);
+        fm.beginTransaction().add(fragment, TAG).commitAllowingStateLoss();
+    }
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        ADDING.remove(getActivity());
+        // Pending originators survive configuration changes along with this instance
+        setRetainInstance(true);
+    }
+
+    @SuppressLint("NewApi")
+    void requestPermissions(@NonNull Object originator,
+                            int requestCode,
+                            @NonNull String[] perms) {
+        mPending.put(requestCode, originator, perms);
+        requestPermissions(perms, requestCode);
+    }
+
+    @Override
+    public void onRequestPermissionsResult(int requestCode,
+                                           @NonNull String[] permissions,
+                                           @NonNull int[] grantResults) {
+        PermissionResultRouter.Originator originator = mPending.take(requestCode, permissions);
+        Object receiver = originator != null ? findReceiver(originator) : null;
+        if (receiver == null) {
+            PermissionResultRouter.onOriginatorLost(requestCode);
+            return;
+        }
+        PermissionResultRouter.dispatch(receiver, requestCode, permissions, grantResults);
+    }
+
+    @Nullable
+    private Object findReceiver(@NonNull PermissionResultRouter.Originator originator) {
+        Activity activity = getActivity();
+        // The Activity may have been recreated while the dialog was showing
+        if (originator.isActivity()) {
+            return activity;
+        }
+        Object host = originator.get();
+        if (host instanceof Fragment && ((Fragment) host).isAdded()) {
+            return host;
+        }
+        if (activity == null) {
+            return null;
+        }
+        FragmentManager fm = activity.getFragmentManager();
+        if (originator.getTag() != null) {
+            return fm.findFragmentByTag(originator.getTag());
+        }
+        return originator.getId() != 0 ? fm.findFragmentById(originator.getId()) : null;
+    }
+}
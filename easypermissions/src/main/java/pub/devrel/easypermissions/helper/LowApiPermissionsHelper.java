@@ -1,6 +1,7 @@
 package pub.devrel.easypermissions.helper;
 
 import android.content.Context;
+import android.os.Bundle;
 import android.support.annotation.NonNull;
 
 /**
@@ -35,10 +36,16 @@ class LowApiPermissionsHelper extends PermissionHelper<Object> {
                                                int positiveButton,
                                                int negativeButton,
                                                int requestCode,
+                                               int priority,
                                                @NonNull String... perms) {
         throw new IllegalStateException("Should never be requesting permissions on API < 23!");
     }
 
+    @Override
+    public void showRationaleDialog(@NonNull Bundle arguments) {
+        throw new IllegalStateException("Should never be requesting permissions on API < 23!");
+    }
+
     @Override
     public Context getContext() {
         return null;
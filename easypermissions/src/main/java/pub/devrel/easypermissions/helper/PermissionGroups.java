@@ -0,0 +1,112 @@
+package pub.devrel.easypermissions.helper;
+
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.RestrictTo;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Static table of the platform permission groups, used to check only one permission per group.
+ * <p>
+ * Up to API 25 a runtime permission is granted or denied together with all permissions of its
+ * group that the app declares, so checking one of them answers for the whole group. Starting with
+ * API 26 every permission is tracked on its own (a sibling is only granted without a dialog once
+ * it is requested), so no table is used there and every permission is checked.
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY)
+public final class PermissionGroups {
+
+    /**
+     * Groups of API 23 to 25, see {@code frameworks/base/core/res/AndroidManifest.xml}.
+     */
+    private static final String[][] GROUPS_M = {
+            // CALENDAR
+            {"android.permission.READ_CALENDAR", "android.permission.WRITE_CALENDAR"},
+            // CONTACTS
+            {"android.permission.READ_CONTACTS", "android.permission.WRITE_CONTACTS",
+                    "android.permission.GET_ACCOUNTS"},
+            // LOCATION
+            {"android.permission.ACCESS_FINE_LOCATION",
+                    "android.permission.ACCESS_COARSE_LOCATION"},
+            // PHONE
+            {"android.permission.READ_PHONE_STATE", "android.permission.CALL_PHONE",
+                    "android.permission.READ_CALL_LOG", "android.permission.WRITE_CALL_LOG",
+                    "com.android.voicemail.permission.ADD_VOICEMAIL",
+                    "android.permission.USE_SIP", "android.permission.PROCESS_OUTGOING_CALLS"},
+            // SMS
+            {"android.permission.SEND_SMS", "android.permission.RECEIVE_SMS",
+                    "android.permission.READ_SMS", "android.permission.RECEIVE_WAP_PUSH",
+                    "android.permission.RECEIVE_MMS"},
+            // STORAGE
+            {"android.permission.READ_EXTERNAL_STORAGE",
+                    "android.permission.WRITE_EXTERNAL_STORAGE"},
+    };
+
+    /**
+     * Group index of every grouped permission on this device, {@code null} if permissions are
+     * not granted per group.
+     */
+    @Nullable
+    private static final Map<String, Integer> GROUP_INDEX =
+            buildIndex(groupsFor(Build.VERSION.SDK_INT));
+
+    private static volatile boolean sEnabled;
+
+    private PermissionGroups() {
+    }
+
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * @return {@code true} if checks should be made once per group on this device.
+     */
+    public static boolean isActive() {
+        return sEnabled && GROUP_INDEX != null;
+    }
+
+    /**
+     * Call once per check, with a mask that starts at {@code 0}.
+     *
+     * @return the new mask if {@code perm} is the first of its group, or {@code -1} if a
+     * permission of the same group was already checked and {@code perm} can be skipped.
+     */
+    public static long markChecked(long checkedGroups, @NonNull String perm) {
+        Integer group = GROUP_INDEX != null ? GROUP_INDEX.get(perm) : null;
+        if (group == null) {
+            return checkedGroups;
+        }
+        long bit = 1L << group;
+        return (checkedGroups & bit) != 0 ? -1 : checkedGroups | bit;
+    }
+
+    @Nullable
+    private static String[][] groupsFor(int sdk) {
+        if (sdk >= Build.VERSION_CODES.M && sdk <= Build.VERSION_CODES.N_MR1) {
+            return GROUPS_M;
+        }
+        return null;
+    }
+
+    @Nullable
+    private static Map<String, Integer> buildIndex(@Nullable String[][] groups) {
+        if (groups == null) {
+            return null;
+        }
+        Map<String, Integer> index = new HashMap<>();
+        for (int i = 0; i < groups.length; i++) {
+            for (String perm : groups[i]) {
+                index.put(perm, i);
+            }
+        }
+        return index;
+    }
+}
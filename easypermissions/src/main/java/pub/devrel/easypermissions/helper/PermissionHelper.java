@@ -3,14 +3,21 @@ package pub.devrel.easypermissions.helper;
 import android.app.Activity;
 import android.content.Context;
 import android.os.Build;
+import android.os.Bundle;
 import android.support.annotation.NonNull;
 import android.support.annotation.RestrictTo;
 import android.support.annotation.StringRes;
 import android.support.v4.app.Fragment;
 import android.support.v7.app.AppCompatActivity;
 
+import java.lang.ref.WeakReference;
 import java.util.List;
 
+import pub.devrel.easypermissions.PermissionHistory;
+import pub.devrel.easypermissions.PermissionMetrics;
+import pub.devrel.easypermissions.PermissionRequest;
+import pub.devrel.easypermissions.PermissionTrace;
+
 /**
  * Delegate class to make permission calls based on the 'host' (Fragment, Activity, etc).
  */
@@ -19,7 +26,62 @@ public abstract class PermissionHelper<T> {
 
     private static final String TAG = "PermissionHelper";
 
-    private T mHost;
+    private final WeakReference<T> mHost;
+
+    /**
+     * Get the helper of an Activity, creating it on first use. The same helper is returned until
+     * the Activity is destroyed.
+     */
+    @NonNull
+    public static PermissionHelper getInstance(@NonNull Activity host) {
+        PermissionHelper helper = PermissionHelperRegistry.get(host);
+        if (helper == null) {
+            PermissionTrace.beginSection(PermissionTrace.CREATE_HELPER);
+            try {
+                helper = newInstance(host);
+                PermissionHelperRegistry.put(host, helper, host);
+            } finally {
+                PermissionTrace.endSection();
+            }
+        }
+        return helper;
+    }
+
+    /**
+     * @see #getInstance(Activity)
+     */
+    @NonNull
+    public static PermissionHelper getInstance(@NonNull Fragment host) {
+        PermissionHelper helper = PermissionHelperRegistry.get(host);
+        if (helper == null) {
+            PermissionTrace.beginSection(PermissionTrace.CREATE_HELPER);
+            try {
+                helper = newInstance(host);
+                PermissionHelperRegistry.put(host, helper, host.getActivity());
+            } finally {
+                PermissionTrace.endSection();
+            }
+        }
+        return helper;
+    }
+
+    /**
+     * @see #getInstance(Activity)
+     */
+    @NonNull
+    public static PermissionHelper getInstance(@NonNull android.app.Fragment host) {
+        PermissionHelper helper = PermissionHelperRegistry.get(host);
+        if (helper == null) {
+            PermissionTrace.beginSection(PermissionTrace.CREATE_HELPER);
+            try {
+                helper = newInstance(host);
+                PermissionHelperRegistry.put(host, helper, host.getActivity());
+            } finally {
+                PermissionTrace.endSection();
+            }
+        }
+        return helper;
+    }
 
     @NonNull
     public static PermissionHelper newInstance(Activity host) {
@@ -58,7 +120,8 @@ public abstract class PermissionHelper<T> {
     // ============================================================================
 
     public PermissionHelper(@NonNull T host) {
-        mHost = host;
+        // Held weakly so that cached helpers never keep a destroyed host alive
+        mHost = new WeakReference<>(host);
     }
 
     /**
@@ -68,7 +131,18 @@ public abstract class PermissionHelper<T> {
      * @return
      */
     public boolean shouldShowRationale(@NonNull String... perms) {
+        boolean perGroup = PermissionGroups.isActive();
+        long checkedGroups = 0L;
         for (String perm : perms) {
+            if (perGroup) {
+                // 同组权限的状态相同，只查询一次
+                long marked = PermissionGroups.markChecked(checkedGroups, perm);
+                if (marked == -1) {
+                    continue;
+                }
+                checkedGroups = marked;
+            }
+            PermissionMetrics.onRationaleQuery();
             if (shouldShowRequestPermissionRationale(perm)) {
                 return true;
             }
@@ -90,17 +164,71 @@ public abstract class PermissionHelper<T> {
                                    @StringRes int negativeButton,
                                    int requestCode,
                                    @NonNull String... perms) {
+        requestPermissions(rationale, positiveButton, negativeButton, requestCode,
+                PermissionRequest.PRIORITY_NORMAL, perms);
+    }
+
+    /**
+     * 请求权限，带优先级
+     *
+     * @param rationale
+     * @param positiveButton
+     * @param negativeButton
+     * @param requestCode
+     * @param priority       see {@link PermissionRequestScheduler}
+     * @param perms
+     */
+    public void requestPermissions(@NonNull String rationale,
+                                   @StringRes int positiveButton,
+                                   @StringRes int negativeButton,
+                                   int requestCode,
+                                   int priority,
+                                   @NonNull String... perms) {
 
         // 是否需要给出请求权限的原因
         if (shouldShowRationale(perms)) {
-            //
+            PermissionMetrics.onRationaleShown(getContext(), requestCode);
             showRequestPermissionRationale(
-                    rationale, positiveButton, negativeButton, requestCode, perms);
+                    rationale, positiveButton, negativeButton, requestCode, priority, perms);
         } else {
+            PermissionRequestCoordinator.submit(this, requestCode, priority, perms);
+        }
+    }
+
+    /**
+     * Ask the system for permissions, going through the {@link PermissionRequestCoordinator} so
+     * that concurrent requests can be merged, and the {@link PermissionRequestScheduler} so that
+     * only one is shown at a time.
+     *
+     * @param requestCode
+     * @param priority
+     * @param perms
+     */
+    public void submitRequestPermissions(int requestCode,
+                                         int priority,
+                                         @NonNull String... perms) {
+        PermissionRequestCoordinator.submit(this, requestCode, priority, perms);
+    }
+
+    /**
+     * Issue the system request, from the Activity's routing fragment when result routing is
+     * enabled so that the result comes back without the host forwarding it.
+     */
+    void issueRequestPermissions(int requestCode, @NonNull String... perms) {
+        if (!PermissionResultRouter.isEnabled() || !routeRequestPermissions(requestCode, perms)) {
             directRequestPermissions(requestCode, perms);
         }
     }
 
+    /**
+     * Issue the system request from a {@link PermissionResultRouter} routing fragment.
+     *
+     * @return {@code false} if this host can't route its requests.
+     */
+    boolean routeRequestPermissions(int requestCode, @NonNull String[] perms) {
+        return false;
+    }
+
     /**
      * 权限是否被永久拒绝
      *
@@ -124,16 +252,32 @@ public abstract class PermissionHelper<T> {
      * @return
      */
     public boolean permissionPermanentlyDenied(@NonNull String perms) {
-        return !shouldShowRequestPermissionRationale(perms);
+        PermissionMetrics.onRationaleQuery();
+        // 从未请求过的权限同样不需要给出原因，但并非被永久拒绝
+        // A permission that was never requested doesn't need a rationale either
+        return !shouldShowRequestPermissionRationale(perms)
+                && !PermissionHistory.wasNeverAsked(perms);
     }
 
     public boolean somePermissionDenied(@NonNull String... perms) {
         return shouldShowRationale(perms);
     }
 
+    /**
+     * @return {@code false} if a rationale dialog fragment can't be added right now, e.g. because
+     * the host has already saved its state.
+     */
+    public boolean canShowRationaleFragment() {
+        return true;
+    }
+
     @NonNull
     public T getHost() {
-        return mHost;
+        T host = mHost.get();
+        if (host == null) {
+            throw new IllegalStateException("Host of this PermissionHelper no longer exists");
+        }
+        return host;
     }
 
     // ============================================================================
@@ -154,8 +298,14 @@ public abstract class PermissionHelper<T> {
                                                         @StringRes int positiveButton,
                                                         @StringRes int negativeButton,
                                                         int requestCode,
+                                                        int priority,
                                                         @NonNull String... perms);
 
+    /**
+     * Show a rationale dialog fragment from its already built arguments.
+     */
+    public abstract void showRationaleDialog(@NonNull Bundle arguments);
+
     public abstract Context getContext();
 
 }
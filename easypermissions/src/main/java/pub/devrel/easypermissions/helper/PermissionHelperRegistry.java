@@ -0,0 +1,83 @@
+package pub.devrel.easypermissions.helper;
+
+import android.app.Activity;
+import android.app.Application;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Keeps one {@link PermissionHelper} per host so that repeated calls on the same Activity or
+ * Fragment reuse it.
+ * <p>
+ * Hosts are held weakly, and the entry of an Activity is dropped as soon as it is destroyed.
+ */
+final class PermissionHelperRegistry {
+
+    private static final Map<Object, PermissionHelper> HELPERS = new WeakHashMap<>();
+
+    private static final Application.ActivityLifecycleCallbacks LIFECYCLE_CALLBACKS =
+            new EvictingCallbacks();
+
+    private static boolean sCallbacksRegistered;
+
+    private PermissionHelperRegistry() {
+    }
+
+    @Nullable
+    static synchronized PermissionHelper get(@NonNull Object host) {
+        return HELPERS.get(host);
+    }
+
+    /**
+     * @param activity the Activity the host lives in, used to find out when it is destroyed.
+     */
+    static synchronized void put(@NonNull Object host,
+                                 @NonNull PermissionHelper helper,
+                                 @Nullable Activity activity) {
+        HELPERS.put(host, helper);
+        if (!sCallbacksRegistered && activity != null) {
+            activity.getApplication().registerActivityLifecycleCallbacks(LIFECYCLE_CALLBACKS);
+            sCallbacksRegistered = true;
+        }
+    }
+
+    static synchronized void remove(@NonNull Object host) {
+        HELPERS.remove(host);
+    }
+
+    private static class EvictingCallbacks implements Application.ActivityLifecycleCallbacks {
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+            remove(activity);
+        }
+
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityStarted(Activity activity) {
+        }
+
+        @Override
+        public void onActivityResumed(Activity activity) {
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+    }
+}
@@ -0,0 +1,399 @@
+package pub.devrel.easypermissions.helper;
+
+import android.annotation.SuppressLint;
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.RestrictTo;
+import android.support.annotation.VisibleForTesting;
+import android.support.v4.app.ActivityCompat;
+import android.support.v4.app.Fragment;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Sits between {@link PermissionHelper#requestPermissions} and the {@link
+ * PermissionRequestScheduler} to merge concurrent system requests.
+ * <p>
+ * When enabled, requests made from the same Activity (or its Fragments) while the main thread
+ * handles the same message, e.g. from the {@code onCreate()} or {@code onResume()} of an Activity
+ * and its Fragments, are merged into a single system request over the union of their permissions,
+ * issued by the first requester right after that message. Requests whose permissions are all part
+ * of a request already in flight are attached to it instead of being issued again. When the merged
+ * result is forwarded to {@code EasyPermissions.onRequestPermissionsResult}, it is split back and
+ * delivered to the {@code onRequestPermissionsResult} of every original host with its own request
+ * code.
+ * <p>
+ * A request stops being in flight when its result arrives, when its Activity resumes after the
+ * system dialog without the result having been forwarded, or when its Activity is destroyed.
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY)
+@MainThread
+public final class PermissionRequestCoordinator {
+
+    private static final List<Batch> PENDING = new ArrayList<>();
+    private static final List<Batch> IN_FLIGHT = new ArrayList<>();
+
+    private static boolean sEnabled;
+    private static Handler sHandler;
+    private static Application sApplication;
+
+    private PermissionRequestCoordinator() {
+    }
+
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * Forget pending and in-flight requests and the registered lifecycle callbacks, e.g. between
+     * tests that each get a new {@link Application}.
+     */
+    @VisibleForTesting
+    static void reset() {
+        PENDING.clear();
+        IN_FLIGHT.clear();
+        sApplication = null;
+        sHandler = null;
+    }
+
+    /**
+     * Issue, merge or attach a system permission request.
+     */
+    static void submit(@NonNull PermissionHelper helper,
+                       int requestCode,
+                       int priority,
+                       @NonNull String... perms) {
+        if (!sEnabled) {
+            PermissionRequestScheduler.enqueue(helper, requestCode, priority, perms);
+            return;
+        }
+
+        Context context = helper.getContext();
+        Request request = new Request(helper, requestCode, priority, perms);
+        if (context != null) {
+            registerCallbacks(context);
+        }
+
+        // Same permissions are already being asked for, wait for that result
+        for (Batch batch : IN_FLIGHT) {
+            if (batch.mContext.get() == context && batch.containsAll(perms)) {
+                batch.mRequests.add(request);
+                return;
+            }
+        }
+
+        for (Batch batch : PENDING) {
+            if (batch.mContext.get() == context) {
+                batch.add(request);
+                return;
+            }
+        }
+
+        // Issued once the current message is handled, requests made until then are merged in
+        final Batch batch = new Batch(context);
+        batch.add(request);
+        PENDING.add(batch);
+        getHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                flush(batch);
+            }
+        });
+    }
+
+    /**
+     * Split the result of a merged request back to the original requesters.
+     *
+     * @param receivers the receivers the result was forwarded to, used to tell apart requests of
+     *                  different Activities with the same request code.
+     * @return {@code true} if the result belonged to a merged request and was delivered, in which
+     * case the caller must not dispatch it again.
+     */
+    public static boolean onRequestPermissionsResult(int requestCode,
+                                                     @NonNull String[] permissions,
+                                                     @NonNull int[] grantResults,
+                                                     @NonNull Object[] receivers) {
+        if (IN_FLIGHT.isEmpty()) {
+            return false;
+        }
+
+        Batch batch = null;
+        for (Iterator<Batch> it = IN_FLIGHT.iterator(); it.hasNext(); ) {
+            Batch candidate = it.next();
+            // An interrupted request comes back with no permissions at all
+            if (candidate.mIssuedCode == requestCode
+                    && (permissions.length == 0
+                    || Arrays.equals(candidate.mIssuedPerms, permissions))
+                    && isForwardedFrom(candidate.mContext.get(), receivers)) {
+                it.remove();
+                batch = candidate;
+                break;
+            }
+        }
+        if (batch == null) {
+            return false;
+        }
+
+        // Nothing was merged, let the host that asked handle its own result
+        if (batch.mRequests.size() == 1) {
+            return false;
+        }
+
+        for (Request request : batch.mRequests) {
+            Object host = request.mHost.get();
+            if (host == null) {
+                continue;
+            }
+            String[] perms = permissions.length == 0 ? permissions : request.mPerms;
+            deliver(host, request.mRequestCode, perms,
+                    subsetResults(permissions, grantResults, perms));
+        }
+        return true;
+    }
+
+    private static void flush(@NonNull Batch batch) {
+        // Dropped in the meantime because its Activity was destroyed
+        if (!PENDING.remove(batch)) {
+            return;
+        }
+
+        Request issuer = batch.mRequests.get(0);
+        Object host = issuer.mHost.get();
+        if (host == null) {
+            return;
+        }
+
+        batch.mIssuedCode = issuer.mRequestCode;
+        batch.mIssuedPerms = batch.mPerms.toArray(new String[batch.mPerms.size()]);
+        IN_FLIGHT.add(batch);
+        PermissionRequestScheduler.enqueue(issuer.mHelper, batch.mIssuedCode, batch.mPriority,
+                batch.mIssuedPerms);
+    }
+
+    /**
+     * @return {@code true} if one of {@code receivers} belongs to {@code context}, or if none of
+     * them tells which Activity it belongs to.
+     */
+    private static boolean isForwardedFrom(@Nullable Context context, @NonNull Object[] receivers) {
+        boolean known = false;
+        for (Object receiver : receivers) {
+            Context receiverContext = contextOf(receiver);
+            if (receiverContext != null) {
+                if (receiverContext == context) {
+                    return true;
+                }
+                known = true;
+            }
+        }
+        return !known;
+    }
+
+    @Nullable
+    private static Context contextOf(@Nullable Object receiver) {
+        if (receiver instanceof Activity) {
+            return (Activity) receiver;
+        }
+        if (receiver instanceof Fragment) {
+            return ((Fragment) receiver).getActivity();
+        }
+        if (receiver instanceof android.app.Fragment) {
+            return ((android.app.Fragment) receiver).getActivity();
+        }
+        return null;
+    }
+
+    @NonNull
+    private static int[] subsetResults(@NonNull String[] permissions,
+                                       @NonNull int[] grantResults,
+                                       @NonNull String[] subset) {
+        int[] results = new int[subset.length];
+        for (int i = 0; i < subset.length; i++) {
+            results[i] = PackageManager.PERMISSION_DENIED;
+            for (int j = 0; j < permissions.length; j++) {
+                if (permissions[j].equals(subset[i])) {
+                    results[i] = grantResults[j];
+                    break;
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Hand a result to the host as if the system had delivered it there.
+     */
+    @SuppressLint("NewApi")
+    private static void deliver(@NonNull Object host,
+                                int requestCode,
+                                @NonNull String[] perms,
+                                @NonNull int[] grantResults) {
+        // Routed hosts don't forward their results, hand them over directly
+        if (PermissionResultRouter.isEnabled()) {
+            PermissionResultRouter.dispatch(host, requestCode, perms, grantResults);
+            return;
+        }
+        if (host instanceof Fragment) {
+            ((Fragment) host).onRequestPermissionsResult(requestCode, perms, grantResults);
+        } else if (host instanceof android.app.Fragment) {
+            ((android.app.Fragment) host).onRequestPermissionsResult(requestCode, perms,
+                    grantResults);
+        } else if (host instanceof ActivityCompat.OnRequestPermissionsResultCallback) {
+            ((ActivityCompat.OnRequestPermissionsResultCallback) host)
+                    .onRequestPermissionsResult(requestCode, perms, grantResults);
+        } else if (host instanceof Activity) {
+            ((Activity) host).onRequestPermissionsResult(requestCode, perms, grantResults);
+        }
+    }
+
+    private static void registerCallbacks(@NonNull Context context) {
+        if (sApplication != null) {
+            return;
+        }
+        Context appContext = context.getApplicationContext();
+        if (!(appContext instanceof Application)) {
+            return;
+        }
+        sApplication = (Application) appContext;
+        sApplication.registerActivityLifecycleCallbacks(new LifecycleCallbacks());
+    }
+
+    @NonNull
+    private static Handler getHandler() {
+        if (sHandler == null) {
+            sHandler = new Handler(Looper.getMainLooper());
+        }
+        return sHandler;
+    }
+
+    /**
+     * A request as made by one host.
+     */
+    private static class Request {
+
+        final PermissionHelper mHelper;
+        final WeakReference<Object> mHost;
+        final int mRequestCode;
+        final int mPriority;
+        final String[] mPerms;
+
+        Request(@NonNull PermissionHelper helper,
+                int requestCode,
+                int priority,
+                @NonNull String[] perms) {
+            mHelper = helper;
+            mHost = new WeakReference<>(helper.getHost());
+            mRequestCode = requestCode;
+            mPriority = priority;
+            mPerms = perms;
+        }
+    }
+
+    /**
+     * Requests from one Activity merged into a single system request.
+     */
+    private static class Batch {
+
+        final WeakReference<Context> mContext;
+        final List<Request> mRequests = new ArrayList<>();
+        final Set<String> mPerms = new LinkedHashSet<>();
+
+        int mIssuedCode;
+        String[] mIssuedPerms;
+        int mPriority = Integer.MIN_VALUE;
+
+        /**
+         * Whether the Activity went to the background after the system request was issued.
+         */
+        boolean mPaused;
+
+        Batch(Context context) {
+            mContext = new WeakReference<>(context);
+        }
+
+        void add(@NonNull Request request) {
+            mRequests.add(request);
+            mPerms.addAll(Arrays.asList(request.mPerms));
+            // The merged request is as urgent as its most urgent part
+            mPriority = Math.max(mPriority, request.mPriority);
+        }
+
+        boolean containsAll(@NonNull String[] perms) {
+            return mPerms.containsAll(Arrays.asList(perms));
+        }
+    }
+
+    private static class LifecycleCallbacks implements Application.ActivityLifecycleCallbacks {
+
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityStarted(Activity activity) {
+        }
+
+        @Override
+        public void onActivityResumed(Activity activity) {
+            // The system dialog was dismissed but the result was never forwarded to us, stop
+            // attaching new requests to it
+            for (Iterator<Batch> it = IN_FLIGHT.iterator(); it.hasNext(); ) {
+                Batch batch = it.next();
+                if (batch.mPaused && batch.mContext.get() == activity) {
+                    it.remove();
+                }
+            }
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+            for (Batch batch : IN_FLIGHT) {
+                // Still waiting in the scheduler, the pause is not caused by its dialog
+                if (batch.mContext.get() == activity && !PermissionRequestScheduler.isQueued(
+                        activity, batch.mIssuedCode, batch.mIssuedPerms)) {
+                    batch.mPaused = true;
+                }
+            }
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+            removeBatches(PENDING, activity);
+            removeBatches(IN_FLIGHT, activity);
+        }
+
+        private void removeBatches(@NonNull List<Batch> batches, @NonNull Activity activity) {
+            for (Iterator<Batch> it = batches.iterator(); it.hasNext(); ) {
+                Context context = it.next().mContext.get();
+                if (context == null || context == activity) {
+                    it.remove();
+                }
+            }
+        }
+    }
+}
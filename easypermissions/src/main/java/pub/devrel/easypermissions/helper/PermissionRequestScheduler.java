@@ -0,0 +1,338 @@
+package pub.devrel.easypermissions.helper;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.RestrictTo;
+import android.support.annotation.VisibleForTesting;
+import android.support.v4.app.Fragment;
+
+import java.lang.ref.WeakReference;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+
+/**
+ * Process-wide queue that lets only one system permission request be shown at a time.
+ * <p>
+ * Android shows a single permission dialog at a time and silently drops a request made while
+ * another one is showing. When enabled, system requests wait here and are issued one by one,
+ * highest priority first and in submission order for equal priorities. The next request is issued
+ * once the result of the current one is forwarded to {@code
+ * EasyPermissions.onRequestPermissionsResult}, or once its Activity resumes without having
+ * forwarded it. Queued requests of a destroyed host are dropped.
+ * <p>
+ * Queue depth and wait times are recorded so that contention can be observed, see {@link
+ * #getMaxQueueDepth()} and {@link #getAverageWaitMillis()}.
+ */
+@MainThread
+public final class PermissionRequestScheduler {
+
+    private static final PriorityQueue<Entry> QUEUE = new PriorityQueue<>(8,
+            new Comparator<Entry>() {
+                @Override
+                public int compare(Entry a, Entry b) {
+                    if (a.mPriority != b.mPriority) {
+                        return a.mPriority > b.mPriority ? -1 : 1;
+                    }
+                    return a.mSequence < b.mSequence ? -1 : (a.mSequence == b.mSequence ? 0 : 1);
+                }
+            });
+
+    private static boolean sEnabled;
+    private static Handler sHandler;
+    private static Application sApplication;
+    private static long sSequence;
+
+    @Nullable
+    private static Entry sActive;
+
+    private static int sMaxQueueDepth;
+    private static int sIssuedCount;
+    private static int sCancelledCount;
+    private static long sTotalWaitMillis;
+    private static long sMaxWaitMillis;
+
+    private PermissionRequestScheduler() {
+    }
+
+    /**
+     * Queue system permission requests so that only one is shown at a time. Disabled by default.
+     * Requests already queued are still issued after disabling.
+     */
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * @return the number of requests waiting for the current one to finish.
+     */
+    public static int getQueueDepth() {
+        return QUEUE.size();
+    }
+
+    /**
+     * @return the highest number of requests that were waiting at the same time.
+     */
+    public static int getMaxQueueDepth() {
+        return sMaxQueueDepth;
+    }
+
+    /**
+     * @return the number of system requests issued by the scheduler.
+     */
+    public static int getIssuedCount() {
+        return sIssuedCount;
+    }
+
+    /**
+     * @return the number of queued requests dropped because their host was destroyed.
+     */
+    public static int getCancelledCount() {
+        return sCancelledCount;
+    }
+
+    /**
+     * @return the time the slowest issued request waited in the queue.
+     */
+    public static long getMaxWaitMillis() {
+        return sMaxWaitMillis;
+    }
+
+    /**
+     * @return the average time issued requests waited in the queue.
+     */
+    public static long getAverageWaitMillis() {
+        return sIssuedCount == 0 ? 0 : sTotalWaitMillis / sIssuedCount;
+    }
+
+    public static void resetMetrics() {
+        sMaxQueueDepth = QUEUE.size();
+        sIssuedCount = 0;
+        sCancelledCount = 0;
+        sTotalWaitMillis = 0;
+        sMaxWaitMillis = 0;
+    }
+
+    /**
+     * Forget queued requests and the registered lifecycle callbacks, e.g. between tests that each
+     * get a new {@link Application}.
+     */
+    @VisibleForTesting
+    static void reset() {
+        QUEUE.clear();
+        sActive = null;
+        sApplication = null;
+        sHandler = null;
+        resetMetrics();
+    }
+
+    /**
+     * Issue a system request now, or queue it behind the one being shown.
+     */
+    static void enqueue(@NonNull PermissionHelper helper,
+                        int requestCode,
+                        int priority,
+                        @NonNull String... perms) {
+        Context context = helper.getContext();
+        if (!sEnabled || context == null) {
+            helper.issueRequestPermissions(requestCode, perms);
+            return;
+        }
+        registerCallbacks(context);
+
+        QUEUE.add(new Entry(helper, context, requestCode, priority, perms, sSequence++));
+        sMaxQueueDepth = Math.max(sMaxQueueDepth, QUEUE.size());
+        issueNext();
+    }
+
+    /**
+     * Release the request being shown once its result arrives.
+     */
+    @RestrictTo(RestrictTo.Scope.LIBRARY)
+    public static void onRequestPermissionsResult(int requestCode) {
+        if (sActive != null && sActive.mRequestCode == requestCode) {
+            release();
+        }
+    }
+
+    /**
+     * @return {@code true} if a request of {@code context} is waiting in the queue, as opposed to
+     * being shown or already finished.
+     */
+    static boolean isQueued(@NonNull Context context, int requestCode, @NonNull String[] perms) {
+        for (Entry entry : QUEUE) {
+            if (entry.mContext.get() == context && entry.mRequestCode == requestCode
+                    && entry.mPerms == perms) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void release() {
+        sActive = null;
+        // Let the host finish handling its result before the next dialog shows up
+        getHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                issueNext();
+            }
+        });
+    }
+
+    private static void issueNext() {
+        if (sActive != null) {
+            return;
+        }
+
+        Entry entry;
+        while ((entry = QUEUE.poll()) != null) {
+            if (!entry.isHostAlive()) {
+                sCancelledCount++;
+                continue;
+            }
+
+            long waited = SystemClock.uptimeMillis() - entry.mEnqueuedAt;
+            sIssuedCount++;
+            sTotalWaitMillis += waited;
+            sMaxWaitMillis = Math.max(sMaxWaitMillis, waited);
+
+            sActive = entry;
+            entry.mHelper.issueRequestPermissions(entry.mRequestCode, entry.mPerms);
+            return;
+        }
+    }
+
+    private static void registerCallbacks(@NonNull Context context) {
+        if (sApplication != null) {
+            return;
+        }
+        Context appContext = context.getApplicationContext();
+        if (!(appContext instanceof Application)) {
+            return;
+        }
+        sApplication = (Application) appContext;
+        sApplication.registerActivityLifecycleCallbacks(new LifecycleCallbacks());
+    }
+
+    @NonNull
+    private static Handler getHandler() {
+        if (sHandler == null) {
+            sHandler = new Handler(Looper.getMainLooper());
+        }
+        return sHandler;
+    }
+
+    /**
+     * A system request waiting for, or holding, the permission dialog.
+     */
+    private static class Entry {
+
+        final PermissionHelper mHelper;
+        final WeakReference<Object> mHost;
+        final WeakReference<Context> mContext;
+        final int mRequestCode;
+        final int mPriority;
+        final String[] mPerms;
+        final long mSequence;
+        final long mEnqueuedAt = SystemClock.uptimeMillis();
+
+        /**
+         * Whether the Activity went to the background while this request was being shown.
+         */
+        boolean mPaused;
+
+        Entry(@NonNull PermissionHelper helper,
+              @NonNull Context context,
+              int requestCode,
+              int priority,
+              @NonNull String[] perms,
+              long sequence) {
+            mHelper = helper;
+            mHost = new WeakReference<>(helper.getHost());
+            mContext = new WeakReference<>(context);
+            mRequestCode = requestCode;
+            mPriority = priority;
+            mPerms = perms;
+            mSequence = sequence;
+        }
+
+        boolean isHostAlive() {
+            Object host = mHost.get();
+            Context context = mContext.get();
+            if (host == null || context == null) {
+                return false;
+            }
+            if (context instanceof Activity && ((Activity) context).isFinishing()) {
+                return false;
+            }
+            if (host instanceof Fragment) {
+                return ((Fragment) host).isAdded();
+            }
+            if (host instanceof android.app.Fragment) {
+                return ((android.app.Fragment) host).isAdded();
+            }
+            return true;
+        }
+    }
+
+    private static class LifecycleCallbacks implements Application.ActivityLifecycleCallbacks {
+
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityStarted(Activity activity) {
+        }
+
+        @Override
+        public void onActivityResumed(Activity activity) {
+            // The dialog was dismissed but the result was never forwarded to us, don't let the
+            // queue get stuck behind it
+            if (sActive != null && sActive.mPaused && sActive.mContext.get() == activity) {
+                release();
+            }
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+            if (sActive != null && sActive.mContext.get() == activity) {
+                sActive.mPaused = true;
+            }
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+            for (Iterator<Entry> it = QUEUE.iterator(); it.hasNext(); ) {
+                if (it.next().mContext.get() == activity) {
+                    it.remove();
+                    sCancelledCount++;
+                }
+            }
+            if (sActive != null && sActive.mContext.get() == activity) {
+                release();
+            }
+        }
+    }
+}
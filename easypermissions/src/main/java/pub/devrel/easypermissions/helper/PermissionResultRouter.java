@@ -0,0 +1,238 @@
+package pub.devrel.easypermissions.helper;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.os.Build;
+import android.os.Bundle;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.RestrictTo;
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentActivity;
+import android.util.SparseArray;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import pub.devrel.easypermissions.EasyPermissions;
+import pub.devrel.easypermissions.PermissionLog;
+
+/**
+ * Routes permission results to the host that made the request, without the host overriding
+ * {@code onRequestPermissionsResult}.
+ * <p>
+ * When enabled, system requests are issued by a headless, retained routing fragment added once to
+ * the host's Activity ({@link SupportRoutingFragment} or {@link FrameworkRoutingFragment}). The
+ * result comes back to that fragment, which remembers the originator of every request code and
+ * passes the result to {@link EasyPermissions#onRequestPermissionsResult(int, String[], int[],
+ * Object...)} with that originator as the only receiver.
+ * <p>
+ * Routing fragments are never added synchronously, since the request may come from a Fragment
+ * while its FragmentManager is executing transactions. Once routing is in use, they are added
+ * ahead of time when an Activity is created. A request made before the routing fragment of its
+ * Activity is attached is issued by the host itself.
+ * <p>
+ * Support Fragments can only use the lower 8 bits of a request code, so routing fragments only
+ * issue codes from 0 to 255 (see {@link #canRoute(int)}). Requests with larger codes are issued
+ * by the host itself and their results have to be forwarded as usual, which only works for
+ * Activity hosts.
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY)
+@MainThread
+public final class PermissionResultRouter {
+
+    private static final String TAG = "PermissionResultRouter";
+
+    private static boolean sEnabled;
+    private static Application sApplication;
+
+    private PermissionResultRouter() {
+    }
+
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * @return {@code true} if a routing fragment can issue a request with {@code requestCode},
+     * which Fragments must fit in 8 bits.
+     */
+    static boolean canRoute(int requestCode) {
+        return (requestCode & 0xffffff00) == 0;
+    }
+
+    /**
+     * Add routing fragments to the Activities created from now on, see {@link
+     * LifecycleCallbacks}.
+     */
+    static void registerCallbacks(@NonNull Context context) {
+        if (sApplication != null) {
+            return;
+        }
+        Context appContext = context.getApplicationContext();
+        if (!(appContext instanceof Application)) {
+            return;
+        }
+        sApplication = (Application) appContext;
+        sApplication.registerActivityLifecycleCallbacks(new LifecycleCallbacks());
+    }
+
+    /**
+     * Hand a result over to EasyPermissions for a single receiver.
+     */
+    static void dispatch(@NonNull Object receiver,
+                         int requestCode,
+                         @NonNull String[] permissions,
+                         @NonNull int[] grantResults) {
+        EasyPermissions.onRequestPermissionsResult(requestCode, permissions, grantResults,
+                receiver);
+    }
+
+    /**
+     * The host of a routed request. Held weakly, with enough to find it again if it was
+     * recreated while the permission dialog was showing.
+     */
+    static final class Originator {
+
+        private final WeakReference<Object> mHost;
+        @NonNull
+        private final String[] mPerms;
+        private final boolean mActivity;
+        @Nullable
+        private final String mTag;
+        private final int mId;
+
+        Originator(@NonNull Object host, @NonNull String[] perms) {
+            mHost = new WeakReference<>(host);
+            mPerms = perms;
+            mActivity = host instanceof Activity;
+            if (host instanceof Fragment) {
+                mTag = ((Fragment) host).getTag();
+                mId = ((Fragment) host).getId();
+            } else if (host instanceof android.app.Fragment) {
+                mTag = ((android.app.Fragment) host).getTag();
+                mId = ((android.app.Fragment) host).getId();
+            } else {
+                mTag = null;
+                mId = 0;
+            }
+        }
+
+        /**
+         * @return the host if it still exists, {@code null} if it has to be looked up again.
+         */
+        @Nullable
+        Object get() {
+            return mHost.get();
+        }
+
+        boolean isActivity() {
+            return mActivity;
+        }
+
+        @Nullable
+        String getTag() {
+            return mTag;
+        }
+
+        int getId() {
+            return mId;
+        }
+    }
+
+    /**
+     * Originators of the requests in flight from one routing fragment. Hosts may use the same
+     * request code, so a result goes to the oldest originator of its code that requested the same
+     * permissions, or to the oldest one of its code if none did, e.g. for a cancelled request.
+     */
+    static final class PendingOriginators {
+
+        private final SparseArray<List<Originator>> mPending = new SparseArray<>();
+
+        void put(int requestCode, @NonNull Object host, @NonNull String[] perms) {
+            List<Originator> originators = mPending.get(requestCode);
+            if (originators == null) {
+                originators = new ArrayList<>(1);
+                mPending.put(requestCode, originators);
+            }
+            originators.add(new Originator(host, perms));
+        }
+
+        @Nullable
+        Originator take(int requestCode, @NonNull String[] permissions) {
+            List<Originator> originators = mPending.get(requestCode);
+            if (originators == null) {
+                return null;
+            }
+            int index = 0;
+            for (int i = 0; i < originators.size(); i++) {
+                if (Arrays.equals(originators.get(i).mPerms, permissions)) {
+                    index = i;
+                    break;
+                }
+            }
+            Originator originator = originators.remove(index);
+            if (originators.isEmpty()) {
+                mPending.remove(requestCode);
+            }
+            return originator;
+        }
+    }
+
+    /**
+     * Adds the routing fragment of every new Activity, so that it is attached by the time its
+     * Fragments request permissions. Recreated Activities get their retained fragment back.
+     */
+    private static class LifecycleCallbacks implements Application.ActivityLifecycleCallbacks {
+
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+            if (!sEnabled || savedInstanceState != null
+                    || Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+                return;
+            }
+            if (activity instanceof FragmentActivity) {
+                SupportRoutingFragment.add((FragmentActivity) activity);
+            } else {
+                FrameworkRoutingFragment.add(activity);
+            }
+        }
+
+        @Override
+        public void onActivityStarted(Activity activity) {
+        }
+
+        @Override
+        public void onActivityResumed(Activity activity) {
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+        }
+    }
+
+    static void onOriginatorLost(int requestCode) {
+        PermissionLog.w(TAG, "Dropping result of request " + requestCode
+                + ", its host no longer exists");
+    }
+}
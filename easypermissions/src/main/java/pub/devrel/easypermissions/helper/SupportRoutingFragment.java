@@ -0,0 +1,114 @@
+package pub.devrel.easypermissions.helper;
+
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.RestrictTo;
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentActivity;
+import android.support.v4.app.FragmentManager;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Headless, retained fragment that issues the permission requests of a {@link FragmentActivity}
+ * and its support Fragments, see {@link PermissionResultRouter}.
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY)
+public class SupportRoutingFragment extends Fragment {
+
+    public static final String TAG = "EasyPermissionsRoutingFragment";
+
+    /**
+     * Routing fragments committed but not attached yet, which can't be found by tag.
+     */
+    private static final Map<FragmentActivity, SupportRoutingFragment> ADDING = new WeakHashMap<>();
+
+    private final PermissionResultRouter.PendingOriginators mPending =
+            new PermissionResultRouter.PendingOriginators();
+
+    /**
+     * Find the attached routing fragment of {@code activity}, adding it for later requests if
+     * needed. The fragment is never added synchronously, the FragmentManager may be executing
+     * transactions.
+     *
+     * @return {@code null} if the fragment is not attached yet.
+     */
+    @Nullable
+    static SupportRoutingFragment attach(@NonNull FragmentActivity activity) {
+        PermissionResultRouter.registerCallbacks(activity);
+        FragmentManager fm = activity.getSupportFragmentManager();
+        SupportRoutingFragment fragment = (SupportRoutingFragment) fm.findFragmentByTag(TAG);
+        if (fragment == null) {
+            add(activity);
+            return null;
+        }
+        return fragment.isAdded() ? fragment : null;
+    }
+
+    /**
+     * Add the routing fragment of {@code activity} if it has none, unless it saved its state.
+     */
+    static void add(@NonNull FragmentActivity activity) {
+        FragmentManager fm = activity.getSupportFragmentManager();
+        if (ADDING.containsKey(activity) || fm.findFragmentByTag(TAG) != null) {
+            return;
+        }
+        if (fm.isStateSaved()) {
+            return;
+        }
+        SupportRoutingFragment fragment = new SupportRoutingFragment();
+        ADDING.put(activity, fragment);
+        fm.beginTransaction().add(fragment, TAG).commit();
+    }
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        ADDING.remove(getActivity());
+        // Pending originators survive configuration changes along with this instance
+        setRetainInstance(true);
+    }
+
+    void requestPermissions(@NonNull Object originator,
+                            int requestCode,
+                            @NonNull String[] perms) {
+        mPending.put(requestCode, originator, perms);
+        requestPermissions(perms, requestCode);
+    }
+
+    @Override
+    public void onRequestPermissionsResult(int requestCode,
+                                           @NonNull String[] permissions,
+                                           @NonNull int[] grantResults) {
+        PermissionResultRouter.Originator originator = mPending.take(requestCode, permissions);
+        Object receiver = originator != null ? findReceiver(originator) : null;
+        if (receiver == null) {
+            PermissionResultRouter.onOriginatorLost(requestCode);
+            return;
+        }
+        PermissionResultRouter.dispatch(receiver, requestCode, permissions, grantResults);
+    }
+
+    @Nullable
+    private Object findReceiver(@NonNull PermissionResultRouter.Originator originator) {
+        FragmentActivity activity = getActivity();
+        // The Activity may have been recreated while the dialog was showing
+        if (originator.isActivity()) {
+            return activity;
+        }
+        Object host = originator.get();
+        if (host instanceof Fragment && ((Fragment) host).isAdded()) {
+            return host;
+        }
+        if (activity == null) {
+            return null;
+        }
+        FragmentManager fm = activity.getSupportFragmentManager();
+        if (originator.getTag() != null) {
+            return fm.findFragmentByTag(originator.getTag());
+        }
+        return originator.getId() != 0 ? fm.findFragmentById(originator.getId()) : null;
+    }
+}
@@ -0,0 +1,194 @@
+package pub.devrel.easypermissions;
+
+import android.Manifest;
+import android.app.Activity;
+import android.app.Fragment;
+import android.app.FragmentManager;
+import android.content.pm.PackageManager;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class PendingCallbacksTest {
+
+    private static final String[] PERMS = {Manifest.permission.CAMERA};
+
+    private final Object mHost = new Object();
+    private final List<String> mDelivered = new ArrayList<>();
+
+    private final PermissionResultCallback mCallback = new PermissionResultCallback() {
+        @Override
+        public void onPermissionResult(PermissionResult result) {
+            mDelivered.add(result.getGranted() + "/" + result.getDenied());
+        }
+    };
+
+    @Before
+    public void setUp() {
+        PendingCallbacks.reset();
+    }
+
+    @Test
+    public void register_allocatesLowestFreeCode() {
+        int first = PendingCallbacks.register(mHost, null, mCallback);
+        int second = PendingCallbacks.register(mHost, null, mCallback);
+        PendingCallbacks.cancel(first);
+
+        assertEquals(PendingCallbacks.FIRST_REQUEST_CODE, first);
+        assertEquals(PendingCallbacks.FIRST_REQUEST_CODE + 1, second);
+        assertEquals(first, PendingCallbacks.register(mHost, null, mCallback));
+    }
+
+    @Test
+    public void register_failsWhenEveryCodeIsInUse() {
+        int count = PendingCallbacks.LAST_REQUEST_CODE - PendingCallbacks.FIRST_REQUEST_CODE + 1;
+        for (int i = 0; i < count; i++) {
+            assertTrue(PendingCallbacks.register(mHost, null, mCallback)
+                    <= PendingCallbacks.LAST_REQUEST_CODE);
+        }
+        try {
+            PendingCallbacks.register(mHost, null, mCallback);
+            fail();
+        } catch (IllegalStateException expected) {
+            // All 64 codes are waiting for a result
+        }
+    }
+
+    @Test
+    public void deliver_callsCallbackOnceAndFreesCode() {
+        int code = PendingCallbacks.register(mHost, null, mCallback);
+        PermissionResult result = PermissionResult.obtain(PERMS,
+                new int[]{PackageManager.PERMISSION_GRANTED});
+
+        assertTrue(PendingCallbacks.deliver(code, result));
+        assertFalse(PendingCallbacks.deliver(code, result));
+        assertEquals(Arrays.asList("[" + PERMS[0] + "]/[]"), mDelivered);
+        assertEquals(code, PendingCallbacks.register(mHost, null, mCallback));
+        result.recycle();
+    }
+
+    @Test
+    public void deliver_ignoresOtherCodes() {
+        PermissionResult result = PermissionResult.obtain(PERMS,
+                new int[]{PackageManager.PERMISSION_GRANTED});
+
+        assertFalse(PendingCallbacks.deliver(1, result));
+        assertFalse(PendingCallbacks.deliver(PendingCallbacks.FIRST_REQUEST_CODE, result));
+        assertTrue(mDelivered.isEmpty());
+        result.recycle();
+    }
+
+    @Test
+    public void deliverDenied_deniesEveryPermission() {
+        int code = PendingCallbacks.register(mHost, null, mCallback);
+
+        assertTrue(PendingCallbacks.deliverDenied(code, PERMS));
+        assertEquals(Arrays.asList("[]/[" + PERMS[0] + "]"), mDelivered);
+    }
+
+    @Test
+    public void recreatedActivity_swallowsResultOnce() {
+        ActivityController<Activity> controller =
+                Robolectric.buildActivity(Activity.class).create();
+        int code = PendingCallbacks.register(controller.get(), controller.get(), mCallback);
+
+        // Destroyed without finishing, the new instance gets the result
+        controller.destroy();
+        PermissionResult result = PermissionResult.obtain(PERMS,
+                new int[]{PackageManager.PERMISSION_GRANTED});
+
+        assertTrue(PendingCallbacks.deliver(code, result));
+        assertTrue(mDelivered.isEmpty());
+        assertFalse(PendingCallbacks.deliver(code, result));
+        result.recycle();
+    }
+
+    @Test
+    public void recreatedActivity_keepsCodeUntilResult() {
+        ActivityController<Activity> controller =
+                Robolectric.buildActivity(Activity.class).create();
+        int code = PendingCallbacks.register(controller.get(), controller.get(), mCallback);
+        controller.destroy();
+
+        int next = PendingCallbacks.register(mHost, null, mCallback);
+        assertTrue(next != code);
+
+        assertTrue(PendingCallbacks.deliverDenied(code, PERMS));
+        assertEquals(code, PendingCallbacks.register(mHost, null, mCallback));
+    }
+
+    @Test
+    public void finishedActivity_freesCode() {
+        ActivityController<Activity> controller =
+                Robolectric.buildActivity(Activity.class).create();
+        int code = PendingCallbacks.register(controller.get(), controller.get(), mCallback);
+        controller.get().finish();
+        controller.destroy();
+
+        assertFalse(PendingCallbacks.deliverDenied(code, PERMS));
+        assertEquals(code, PendingCallbacks.register(mHost, null, mCallback));
+    }
+
+    @Test
+    public void removedFragment_dropsResult() {
+        Activity activity = Robolectric.buildActivity(Activity.class).create().get();
+        Fragment fragment = new Fragment();
+        FragmentManager fm = activity.getFragmentManager();
+        fm.beginTransaction().add(fragment, "host").commit();
+        fm.executePendingTransactions();
+        int code = PendingCallbacks.register(fragment, activity, mCallback);
+
+        fm.beginTransaction().remove(fragment).commit();
+        fm.executePendingTransactions();
+
+        assertTrue(PendingCallbacks.deliverDenied(code, PERMS));
+        assertTrue(mDelivered.isEmpty());
+        assertEquals(code, PendingCallbacks.register(mHost, null, mCallback));
+    }
+
+    @Test
+    public void removedFragment_freesCodeOnNextRegister() {
+        Activity activity = Robolectric.buildActivity(Activity.class).create().get();
+        Fragment fragment = new Fragment();
+        FragmentManager fm = activity.getFragmentManager();
+        fm.beginTransaction().add(fragment, "host").commit();
+        fm.executePendingTransactions();
+        int code = PendingCallbacks.register(fragment, activity, mCallback);
+
+        fm.beginTransaction().remove(fragment).commit();
+        fm.executePendingTransactions();
+
+        assertEquals(code, PendingCallbacks.register(mHost, null, mCallback));
+    }
+
+    @Test
+    public void abandonedCodes_reclaimedWhenFull() {
+        ActivityController<Activity> controller =
+                Robolectric.buildActivity(Activity.class).create();
+        int abandoned = PendingCallbacks.register(controller.get(), controller.get(), mCallback);
+        controller.destroy();
+
+        int count = PendingCallbacks.LAST_REQUEST_CODE - PendingCallbacks.FIRST_REQUEST_CODE;
+        for (int i = 0; i < count; i++) {
+            PendingCallbacks.register(mHost, null, mCallback);
+        }
+
+        assertEquals(abandoned, PendingCallbacks.register(mHost, null, mCallback));
+    }
+}
@@ -0,0 +1,110 @@
+package pub.devrel.easypermissions;
+
+import android.content.pm.PackageManager;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class PermissionHistoryTest {
+
+    private static final int GRANTED = PackageManager.PERMISSION_GRANTED;
+    private static final int DENIED = PackageManager.PERMISSION_DENIED;
+
+    /**
+     * The history is process-wide, every test uses its own permissions.
+     */
+    private static int sNextPerm;
+
+    @Before
+    public void setUp() {
+        PermissionHistory.enable(RuntimeEnvironment.application);
+    }
+
+    @Test
+    public void result_isVisibleBeforeReturning() {
+        String perm = newPermission();
+        awaitLoaded(perm);
+
+        PermissionHistory.onRequestPermissionsResult(new String[]{perm}, new int[]{DENIED});
+
+        // Callbacks of the result run right after, they must not see the permission as never asked
+        assertFalse(PermissionHistory.wasNeverAsked(perm));
+        assertEquals(1, PermissionHistory.getAskCount(perm));
+        assertEquals(PermissionHistory.RESULT_DENIED, PermissionHistory.getLastResult(perm));
+    }
+
+    @Test
+    public void results_areAccumulated() {
+        String perm = newPermission();
+
+        PermissionHistory.onRequestPermissionsResult(new String[]{perm}, new int[]{DENIED});
+        long firstAsked = PermissionHistory.getFirstAskedMillis(perm);
+        PermissionHistory.onRequestPermissionsResult(new String[]{perm}, new int[]{GRANTED});
+        PermissionHistory.onRequestPermissionsResult(new String[]{perm}, new int[]{DENIED});
+
+        assertEquals(3, PermissionHistory.getAskCount(perm));
+        assertEquals(PermissionHistory.RESULT_DENIED, PermissionHistory.getLastResult(perm));
+        assertEquals(firstAsked, PermissionHistory.getFirstAskedMillis(perm));
+        assertTrue(PermissionHistory.getLastGrantedMillis(perm) > 0);
+        assertTrue(PermissionHistory.getLastAskedMillis(perm) >= firstAsked);
+    }
+
+    @Test
+    public void result_onlyRecordsItsPermissions() {
+        String asked = newPermission();
+        String other = newPermission();
+        awaitLoaded(other);
+
+        PermissionHistory.onRequestPermissionsResult(new String[]{asked}, new int[]{GRANTED});
+
+        assertTrue(PermissionHistory.wasNeverAsked(other));
+        assertEquals(0, PermissionHistory.getAskCount(other));
+        assertEquals(PermissionHistory.RESULT_UNKNOWN, PermissionHistory.getLastResult(other));
+        assertEquals(0, PermissionHistory.getLastGrantedMillis(other));
+    }
+
+    @Test
+    public void emptyResult_isIgnored() {
+        String perm = newPermission();
+
+        // An interrupted request comes back without permissions
+        PermissionHistory.onRequestPermissionsResult(new String[0], new int[0]);
+        PermissionHistory.onRequestPermissionsResult(new String[]{perm}, new int[0]);
+
+        assertEquals(0, PermissionHistory.getAskCount(perm));
+    }
+
+    private static String newPermission() {
+        return "com.example.permission.HISTORY_" + sNextPerm++;
+    }
+
+    /**
+     * Wait for the file to be loaded in the background, {@code unasked} must never be recorded.
+     */
+    private static void awaitLoaded(String unasked) {
+        // Robolectric's SystemClock doesn't move on its own
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!PermissionHistory.wasNeverAsked(unasked)) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("Permission history not loaded");
+            }
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+}
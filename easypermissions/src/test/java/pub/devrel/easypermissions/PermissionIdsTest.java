@@ -0,0 +1,83 @@
+package pub.devrel.easypermissions;
+
+import android.Manifest;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PermissionIdsTest {
+
+    @Test
+    public void wellKnownIds_areFixed() {
+        // Persisted in saved state, changing them breaks restored dialogs
+        assertEquals(0, PermissionIds.idOf(Manifest.permission.READ_CALENDAR));
+        assertEquals(2, PermissionIds.idOf(Manifest.permission.CAMERA));
+        assertEquals(8, PermissionIds.idOf(Manifest.permission.RECORD_AUDIO));
+        assertTrue(PermissionIds.isWellKnown(PermissionIds.idOf(Manifest.permission.CAMERA)));
+    }
+
+    @Test
+    public void idOf_internsNewPermissionsOnce() {
+        String perm = "com.example.permission.INTERNED";
+        int id = PermissionIds.idOf(perm);
+
+        assertEquals(id, PermissionIds.idOf(perm));
+        assertEquals(id, PermissionIds.peekId(perm));
+        assertEquals(perm, PermissionIds.nameOf(id));
+        assertFalse(PermissionIds.isWellKnown(id));
+    }
+
+    @Test
+    public void peekId_doesNotIntern() {
+        String perm = "com.example.permission.PEEKED";
+
+        assertEquals(-1, PermissionIds.peekId(perm));
+        assertEquals(-1, PermissionIds.peekId(perm));
+    }
+
+    @Test
+    public void wellKnownIdsOf_keepsOrder() {
+        int[] ids = PermissionIds.wellKnownIdsOf(new String[]{
+                Manifest.permission.RECORD_AUDIO, Manifest.permission.CAMERA});
+
+        assertArrayEquals(new int[]{8, 2}, ids);
+    }
+
+    @Test
+    public void wellKnownIdsOf_customPermission() {
+        String custom = "com.example.permission.CUSTOM";
+        PermissionIds.idOf(custom);
+
+        assertNull(PermissionIds.wellKnownIdsOf(new String[]{Manifest.permission.CAMERA, custom}));
+        assertNull(PermissionIds.wellKnownIdsOf(new String[]{"com.example.permission.UNKNOWN"}));
+    }
+
+    @Test
+    public void idOf_concurrentCallersGetTheSameId() throws InterruptedException {
+        final String perm = "com.example.permission.CONCURRENT";
+        final int[] ids = new int[8];
+        Thread[] threads = new Thread[ids.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    ids[index] = PermissionIds.idOf(perm);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (int id : ids) {
+            assertEquals(ids[0], id);
+        }
+    }
+}
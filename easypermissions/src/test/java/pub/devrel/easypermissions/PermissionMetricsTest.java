@@ -0,0 +1,88 @@
+package pub.devrel.easypermissions;
+
+import android.Manifest;
+import android.app.Activity;
+import android.content.pm.PackageManager;
+import android.support.annotation.NonNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import pub.devrel.easypermissions.helper.PermissionHelper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class PermissionMetricsTest {
+
+    private static final int CODE = 42;
+    private static final String[] PERMS = {Manifest.permission.CAMERA};
+
+    private final List<PermissionFlowMetrics> mCompleted = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        PermissionMetrics.reset();
+        PermissionMetrics.setListener(new PermissionMetricsListener() {
+            @Override
+            public void onPermissionFlowCompleted(@NonNull PermissionFlowMetrics metrics) {
+                mCompleted.add(metrics);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        PermissionMetrics.reset();
+    }
+
+    @Test
+    public void sameCodeInTwoActivities_resultEndsFlowOfForwardingActivity() {
+        Activity first = Robolectric.buildActivity(Activity.class).create().get();
+        Activity second = Robolectric.buildActivity(Activity.class).create().get();
+        PermissionMetrics.onRequestStarted(PermissionHelper.getInstance(first), CODE, PERMS);
+        PermissionMetrics.onRequestStarted(PermissionHelper.getInstance(second), CODE, PERMS);
+
+        deliverDenied(second);
+        assertEquals(1, mCompleted.size());
+        assertEquals(1, mCompleted.get(0).getDeniedCount());
+
+        // The flow of the first Activity is still waiting for its own result
+        deliverDenied(first);
+        assertEquals(2, mCompleted.size());
+    }
+
+    @Test
+    public void destroyedActivity_dropsItsFlows() {
+        ActivityController<Activity> controller =
+                Robolectric.buildActivity(Activity.class).create();
+        Activity activity = controller.get();
+        PermissionMetrics.onRequestStarted(PermissionHelper.getInstance(activity), CODE, PERMS);
+
+        controller.destroy();
+        deliverDenied(activity);
+
+        assertTrue(mCompleted.isEmpty());
+    }
+
+    private static void deliverDenied(@NonNull Activity receiver) {
+        PermissionResult result = PermissionResult.obtain(PERMS,
+                new int[]{PackageManager.PERMISSION_DENIED});
+        try {
+            PermissionMetrics.onRequestPermissionsResult(CODE, result, new Object[]{receiver});
+        } finally {
+            result.recycle();
+        }
+    }
+}
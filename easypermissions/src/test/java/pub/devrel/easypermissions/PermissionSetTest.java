@@ -0,0 +1,124 @@
+package pub.devrel.easypermissions;
+
+import android.Manifest;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PermissionSetTest {
+
+    private static final String CAMERA = Manifest.permission.CAMERA;
+    private static final String READ_CONTACTS = Manifest.permission.READ_CONTACTS;
+    private static final String RECORD_AUDIO = Manifest.permission.RECORD_AUDIO;
+
+    @Test
+    public void of_ignoresDuplicatesAndOrder() {
+        PermissionSet set = PermissionSet.of(RECORD_AUDIO, CAMERA, RECORD_AUDIO);
+
+        assertEquals(2, set.size());
+        assertEquals(PermissionSet.of(CAMERA, RECORD_AUDIO), set);
+        assertEquals(PermissionSet.of(CAMERA, RECORD_AUDIO).hashCode(), set.hashCode());
+    }
+
+    @Test
+    public void of_nothingIsEmpty() {
+        assertSame(PermissionSet.EMPTY, PermissionSet.of());
+        assertSame(PermissionSet.EMPTY, PermissionSet.of(new ArrayList<String>()));
+        assertTrue(PermissionSet.EMPTY.isEmpty());
+        assertEquals(0, PermissionSet.EMPTY.size());
+    }
+
+    @Test
+    public void setOperations() {
+        PermissionSet a = PermissionSet.of(CAMERA, READ_CONTACTS);
+        PermissionSet b = PermissionSet.of(READ_CONTACTS, RECORD_AUDIO);
+
+        assertEquals(PermissionSet.of(CAMERA, READ_CONTACTS, RECORD_AUDIO), a.union(b));
+        assertEquals(PermissionSet.of(READ_CONTACTS), a.intersect(b));
+        assertEquals(PermissionSet.of(CAMERA), a.minus(b));
+        assertSame(PermissionSet.EMPTY, a.minus(a));
+        assertTrue(a.union(b).containsAll(a));
+        assertFalse(a.containsAll(b));
+    }
+
+    @Test
+    public void toArray_usesCanonicalOrder() {
+        // Well-known ids follow the order of PermissionIds, not the order of the arguments
+        String[] perms = PermissionSet.of(RECORD_AUDIO, READ_CONTACTS, CAMERA).toArray();
+
+        assertArrayEquals(new String[]{CAMERA, READ_CONTACTS, RECORD_AUDIO}, perms);
+    }
+
+    @Test
+    public void toList_isModifiable() {
+        List<String> perms = PermissionSet.of(CAMERA).toList();
+        perms.add(RECORD_AUDIO);
+
+        assertEquals(Arrays.asList(CAMERA, RECORD_AUDIO), perms);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void iterator_cannotRemove() {
+        Iterator<String> it = PermissionSet.of(CAMERA).iterator();
+        it.next();
+        it.remove();
+    }
+
+    @Test
+    public void contains_doesNotInternUnknownPermissions() {
+        String perm = "com.example.permission.NEVER_SEEN";
+
+        assertFalse(PermissionSet.of(CAMERA).contains(perm));
+        assertEquals(-1, PermissionIds.peekId(perm));
+    }
+
+    @Test
+    public void highIds() {
+        // Enough custom permissions to need ids beyond the first 64 bits
+        String[] custom = new String[100];
+        for (int i = 0; i < custom.length; i++) {
+            custom[i] = "com.example.permission.HIGH_" + i;
+        }
+        PermissionSet all = PermissionSet.of(custom).union(PermissionSet.of(CAMERA));
+        String last = custom[custom.length - 1];
+
+        assertEquals(custom.length + 1, all.size());
+        assertTrue(all.contains(last));
+        assertTrue(all.contains(CAMERA));
+        assertEquals(PermissionSet.of(last), all.intersect(PermissionSet.of(last)));
+        assertEquals(PermissionSet.of(CAMERA), all.minus(PermissionSet.of(custom)));
+
+        List<String> iterated = new ArrayList<>();
+        for (String perm : all) {
+            iterated.add(perm);
+        }
+        assertEquals(CAMERA, iterated.get(0));
+        assertEquals(Arrays.asList(custom), iterated.subList(1, iterated.size()));
+    }
+
+    @Test
+    public void highIds_trimmedForEquality() {
+        String high = "com.example.permission.TRIMMED";
+        for (int i = 0; i < 200; i++) {
+            PermissionIds.idOf("com.example.permission.FILLER_" + i);
+        }
+        PermissionSet withHigh = PermissionSet.of(CAMERA, high);
+
+        // The words of the removed high id are dropped, not kept as zeros
+        assertEquals(PermissionSet.of(CAMERA), withHigh.minus(PermissionSet.of(high)));
+        assertEquals(PermissionSet.of(CAMERA).hashCode(),
+                withHigh.minus(PermissionSet.of(high)).hashCode());
+        assertNotEquals(PermissionSet.of(CAMERA), withHigh);
+    }
+}
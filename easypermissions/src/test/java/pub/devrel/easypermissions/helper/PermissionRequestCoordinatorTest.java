@@ -0,0 +1,183 @@
+package pub.devrel.easypermissions.helper;
+
+import android.Manifest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class PermissionRequestCoordinatorTest {
+
+    private static final String CAMERA = Manifest.permission.CAMERA;
+    private static final String READ_CONTACTS = Manifest.permission.READ_CONTACTS;
+
+    private static final int GRANTED = 0;
+    private static final int DENIED = -1;
+
+    private ActivityController<RecordingActivity> mController;
+    private RecordingActivity mActivity;
+    private PermissionHelper mHelper;
+
+    @Before
+    public void setUp() {
+        PermissionRequestCoordinator.reset();
+        PermissionRequestCoordinator.setEnabled(true);
+        PermissionRequestScheduler.setEnabled(false);
+
+        // Keep posted flushes waiting, as if still handling the current message
+        ShadowLooper.pauseMainLooper();
+
+        mController = Robolectric.buildActivity(RecordingActivity.class).create().resume();
+        mActivity = mController.get();
+        mHelper = mActivity.newHelper();
+    }
+
+    @After
+    public void tearDown() {
+        PermissionRequestCoordinator.setEnabled(false);
+        ShadowLooper.unPauseMainLooper();
+    }
+
+    @Test
+    public void requestsOfSameMessage_areMerged() {
+        PermissionRequestCoordinator.submit(mHelper, 1, 0, CAMERA);
+        PermissionRequestCoordinator.submit(mHelper, 2, 0, READ_CONTACTS, CAMERA);
+
+        assertNull(mActivity.lastRequest());
+        ShadowLooper.runUiThreadTasks();
+
+        assertIssued(mActivity, 1, CAMERA, READ_CONTACTS);
+    }
+
+    @Test
+    public void mergedResult_isSplitByRequest() {
+        PermissionRequestCoordinator.submit(mHelper, 1, 0, CAMERA);
+        PermissionRequestCoordinator.submit(mHelper, 2, 0, READ_CONTACTS);
+        ShadowLooper.runUiThreadTasks();
+
+        assertTrue(PermissionRequestCoordinator.onRequestPermissionsResult(1,
+                new String[]{CAMERA, READ_CONTACTS}, new int[]{GRANTED, DENIED},
+                new Object[]{mActivity}));
+
+        assertEquals(Arrays.asList(
+                "1:[" + CAMERA + "][" + GRANTED + "]",
+                "2:[" + READ_CONTACTS + "][" + DENIED + "]"), mActivity.mResults);
+    }
+
+    @Test
+    public void singleRequest_isLeftToItsHost() {
+        PermissionRequestCoordinator.submit(mHelper, 1, 0, CAMERA);
+        ShadowLooper.runUiThreadTasks();
+
+        assertIssued(mActivity, 1, CAMERA);
+        assertFalse(PermissionRequestCoordinator.onRequestPermissionsResult(1,
+                new String[]{CAMERA}, new int[]{GRANTED}, new Object[]{mActivity}));
+        assertEquals(Collections.<String>emptyList(), mActivity.mResults);
+    }
+
+    @Test
+    public void requestOfInFlightPermissions_isAttached() {
+        PermissionRequestCoordinator.submit(mHelper, 1, 0, CAMERA, READ_CONTACTS);
+        ShadowLooper.runUiThreadTasks();
+
+        PermissionRequestCoordinator.submit(mHelper, 2, 0, CAMERA);
+        ShadowLooper.runUiThreadTasks();
+        assertIssued(mActivity, 1, CAMERA, READ_CONTACTS);
+
+        assertTrue(PermissionRequestCoordinator.onRequestPermissionsResult(1,
+                new String[]{CAMERA, READ_CONTACTS}, new int[]{GRANTED, GRANTED},
+                new Object[]{mActivity}));
+        assertEquals(Arrays.asList(
+                "1:[" + CAMERA + ", " + READ_CONTACTS + "][" + GRANTED + ", " + GRANTED + "]",
+                "2:[" + CAMERA + "][" + GRANTED + "]"), mActivity.mResults);
+    }
+
+    @Test
+    public void interruptedResult_isDeliveredEmpty() {
+        PermissionRequestCoordinator.submit(mHelper, 1, 0, CAMERA);
+        PermissionRequestCoordinator.submit(mHelper, 2, 0, READ_CONTACTS);
+        ShadowLooper.runUiThreadTasks();
+
+        assertTrue(PermissionRequestCoordinator.onRequestPermissionsResult(1, new String[0],
+                new int[0], new Object[]{mActivity}));
+        assertEquals(Arrays.asList("1:[][]", "2:[][]"), mActivity.mResults);
+    }
+
+    @Test
+    public void sameCodeInAnotherActivity_isNotMatched() {
+        ActivityController<RecordingActivity> otherController =
+                Robolectric.buildActivity(RecordingActivity.class).create().resume();
+        RecordingActivity other = otherController.get();
+        PermissionHelper otherHelper = other.newHelper();
+
+        PermissionRequestCoordinator.submit(mHelper, 1, 0, CAMERA);
+        PermissionRequestCoordinator.submit(mHelper, 2, 0, READ_CONTACTS);
+        PermissionRequestCoordinator.submit(otherHelper, 1, 0, CAMERA);
+        PermissionRequestCoordinator.submit(otherHelper, 2, 0, READ_CONTACTS);
+        ShadowLooper.runUiThreadTasks();
+
+        assertTrue(PermissionRequestCoordinator.onRequestPermissionsResult(1,
+                new String[]{CAMERA, READ_CONTACTS}, new int[]{GRANTED, GRANTED},
+                new Object[]{other}));
+
+        assertEquals(2, other.mResults.size());
+        assertEquals(0, mActivity.mResults.size());
+    }
+
+    @Test
+    public void destroyedActivity_dropsPendingRequests() {
+        PermissionRequestCoordinator.submit(mHelper, 1, 0, CAMERA);
+        mController.pause().stop().destroy();
+        ShadowLooper.runUiThreadTasks();
+
+        assertNull(mActivity.lastRequest());
+    }
+
+    @Test
+    public void destroyedActivity_dropsRequestsInFlight() {
+        PermissionRequestCoordinator.submit(mHelper, 1, 0, CAMERA);
+        PermissionRequestCoordinator.submit(mHelper, 2, 0, READ_CONTACTS);
+        ShadowLooper.runUiThreadTasks();
+
+        mController.pause().stop().destroy();
+
+        assertFalse(PermissionRequestCoordinator.onRequestPermissionsResult(1,
+                new String[]{CAMERA, READ_CONTACTS}, new int[]{GRANTED, GRANTED},
+                new Object[]{mActivity}));
+    }
+
+    @Test
+    public void resumeAfterDialog_stopsAttaching() {
+        PermissionRequestCoordinator.submit(mHelper, 1, 0, CAMERA);
+        ShadowLooper.runUiThreadTasks();
+
+        // Dialog dismissed, result never forwarded
+        mController.pause().resume();
+        PermissionRequestCoordinator.submit(mHelper, 2, 0, CAMERA);
+        ShadowLooper.runUiThreadTasks();
+
+        assertIssued(mActivity, 2, CAMERA);
+    }
+
+    private static void assertIssued(RecordingActivity activity,
+                                     int requestCode,
+                                     String... perms) {
+        assertEquals(requestCode + ":" + Arrays.toString(perms), activity.lastRequest());
+    }
+}
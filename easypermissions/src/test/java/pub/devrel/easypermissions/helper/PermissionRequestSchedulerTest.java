@@ -0,0 +1,174 @@
+package pub.devrel.easypermissions.helper;
+
+import android.Manifest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class PermissionRequestSchedulerTest {
+
+    private static final String CAMERA = Manifest.permission.CAMERA;
+    private static final String READ_CONTACTS = Manifest.permission.READ_CONTACTS;
+
+    private ActivityController<RecordingActivity> mController;
+    private RecordingActivity mActivity;
+    private PermissionHelper mHelper;
+
+    @Before
+    public void setUp() {
+        PermissionRequestScheduler.reset();
+        PermissionRequestScheduler.setEnabled(true);
+
+        mController = Robolectric.buildActivity(RecordingActivity.class).create().resume();
+        mActivity = mController.get();
+        mHelper = mActivity.newHelper();
+    }
+
+    @After
+    public void tearDown() {
+        PermissionRequestScheduler.setEnabled(false);
+    }
+
+    @Test
+    public void disabled_issuesRightAway() {
+        PermissionRequestScheduler.setEnabled(false);
+
+        PermissionRequestScheduler.enqueue(mHelper, 1, 0, CAMERA);
+        PermissionRequestScheduler.enqueue(mHelper, 2, 0, READ_CONTACTS);
+
+        assertIssued(2, READ_CONTACTS);
+        assertEquals(0, PermissionRequestScheduler.getQueueDepth());
+    }
+
+    @Test
+    public void secondRequest_waitsForFirstResult() {
+        PermissionRequestScheduler.enqueue(mHelper, 1, 0, CAMERA);
+        PermissionRequestScheduler.enqueue(mHelper, 2, 0, READ_CONTACTS);
+
+        assertIssued(1, CAMERA);
+        assertEquals(1, PermissionRequestScheduler.getQueueDepth());
+
+        PermissionRequestScheduler.onRequestPermissionsResult(1);
+        ShadowLooper.runUiThreadTasks();
+
+        assertIssued(2, READ_CONTACTS);
+        assertEquals(0, PermissionRequestScheduler.getQueueDepth());
+        assertEquals(2, PermissionRequestScheduler.getIssuedCount());
+        assertEquals(1, PermissionRequestScheduler.getMaxQueueDepth());
+    }
+
+    @Test
+    public void resultOfAnotherCode_doesNotRelease() {
+        PermissionRequestScheduler.enqueue(mHelper, 1, 0, CAMERA);
+        PermissionRequestScheduler.enqueue(mHelper, 2, 0, READ_CONTACTS);
+
+        PermissionRequestScheduler.onRequestPermissionsResult(2);
+        ShadowLooper.runUiThreadTasks();
+
+        assertIssued(1, CAMERA);
+        assertEquals(1, PermissionRequestScheduler.getQueueDepth());
+    }
+
+    @Test
+    public void queue_highestPriorityFirstThenInOrder() {
+        PermissionRequestScheduler.enqueue(mHelper, 1, 0, CAMERA);
+        PermissionRequestScheduler.enqueue(mHelper, 2, 0, CAMERA);
+        PermissionRequestScheduler.enqueue(mHelper, 3, 10, CAMERA);
+        PermissionRequestScheduler.enqueue(mHelper, 4, 10, CAMERA);
+
+        int[] expected = {3, 4, 2};
+        int current = 1;
+        for (int next : expected) {
+            PermissionRequestScheduler.onRequestPermissionsResult(current);
+            ShadowLooper.runUiThreadTasks();
+            assertIssued(next, CAMERA);
+            current = next;
+        }
+    }
+
+    @Test
+    public void isQueued_onlyWhileWaiting() {
+        String[] first = {CAMERA};
+        String[] second = {READ_CONTACTS};
+        PermissionRequestScheduler.enqueue(mHelper, 1, 0, first);
+        PermissionRequestScheduler.enqueue(mHelper, 2, 0, second);
+
+        assertFalse(PermissionRequestScheduler.isQueued(mActivity, 1, first));
+        assertTrue(PermissionRequestScheduler.isQueued(mActivity, 2, second));
+        // Same permissions, but not the array that was queued
+        assertFalse(PermissionRequestScheduler.isQueued(mActivity, 2, new String[]{READ_CONTACTS}));
+    }
+
+    @Test
+    public void destroyedHost_isDroppedFromQueue() {
+        PermissionRequestScheduler.enqueue(mHelper, 1, 0, CAMERA);
+        ActivityController<RecordingActivity> other =
+                Robolectric.buildActivity(RecordingActivity.class).create().resume();
+        PermissionRequestScheduler.enqueue(other.get().newHelper(), 2, 0,
+                READ_CONTACTS);
+
+        other.pause().stop().destroy();
+
+        assertEquals(0, PermissionRequestScheduler.getQueueDepth());
+        assertEquals(1, PermissionRequestScheduler.getCancelledCount());
+        assertNull(other.get().lastRequest());
+    }
+
+    @Test
+    public void destroyedActiveHost_releasesQueue() {
+        PermissionRequestScheduler.enqueue(mHelper, 1, 0, CAMERA);
+        ActivityController<RecordingActivity> other =
+                Robolectric.buildActivity(RecordingActivity.class).create().resume();
+        RecordingActivity otherActivity = other.get();
+        PermissionRequestScheduler.enqueue(otherActivity.newHelper(), 2, 0,
+                READ_CONTACTS);
+
+        mController.pause().stop().destroy();
+        ShadowLooper.runUiThreadTasks();
+
+        assertEquals("2:[" + READ_CONTACTS + "]", otherActivity.lastRequest());
+    }
+
+    @Test
+    public void resumeWithoutResult_releasesQueue() {
+        PermissionRequestScheduler.enqueue(mHelper, 1, 0, CAMERA);
+        PermissionRequestScheduler.enqueue(mHelper, 2, 0, READ_CONTACTS);
+
+        // The dialog paused the Activity, but its result was never forwarded
+        mController.pause().resume();
+        ShadowLooper.runUiThreadTasks();
+
+        assertIssued(2, READ_CONTACTS);
+    }
+
+    @Test
+    public void resumeWithoutPause_keepsWaiting() {
+        PermissionRequestScheduler.enqueue(mHelper, 1, 0, CAMERA);
+        PermissionRequestScheduler.enqueue(mHelper, 2, 0, READ_CONTACTS);
+
+        mController.resume();
+        ShadowLooper.runUiThreadTasks();
+
+        assertIssued(1, CAMERA);
+    }
+
+    private void assertIssued(int requestCode, String... perms) {
+        assertEquals(requestCode + ":" + Arrays.toString(perms), mActivity.lastRequest());
+    }
+}
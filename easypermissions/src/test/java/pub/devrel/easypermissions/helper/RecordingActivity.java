@@ -0,0 +1,45 @@
+package pub.devrel.easypermissions.helper;
+
+import android.app.Activity;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Activity that records the system requests issued for it and the results handed to it.
+ */
+public class RecordingActivity extends Activity {
+
+    final List<String> mRequests = new ArrayList<>();
+    final List<String> mResults = new ArrayList<>();
+
+    /**
+     * @return a helper that records system requests in {@link #mRequests} instead of issuing
+     * them, as Robolectric doesn't keep track of them.
+     */
+    PermissionHelper newHelper() {
+        return new ActivityPermissionHelper(this) {
+            @Override
+            public void directRequestPermissions(int requestCode, @NonNull String... perms) {
+                mRequests.add(requestCode + ":" + Arrays.toString(perms));
+            }
+        };
+    }
+
+    /**
+     * @return the last system request issued for this Activity, or {@code null}.
+     */
+    String lastRequest() {
+        return mRequests.isEmpty() ? null : mRequests.get(mRequests.size() - 1);
+    }
+
+    @Override
+    public void onRequestPermissionsResult(int requestCode,
+                                           String[] permissions,
+                                           int[] grantResults) {
+        mResults.add(requestCode + ":" + Arrays.toString(permissions)
+                + Arrays.toString(grantResults));
+    }
+}